@@ -1,14 +1,39 @@
 package com.drevotiuk.config;
 
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.ImmediateRequeueMessageRecoverer;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+
+import com.drevotiuk.messaging.NotificationMessageConverter;
+import com.drevotiuk.model.exception.UserServiceUnavailableException;
+import com.drevotiuk.resilience.AdaptiveConcurrencyLimiter;
+import com.drevotiuk.resilience.CancellableSleeper;
+import com.drevotiuk.resilience.CircuitBreaker;
+import com.drevotiuk.scheduling.DelayedDeliveryAdvice;
+import com.drevotiuk.scheduling.DelayedNotificationScheduler;
+import com.drevotiuk.service.InFlightListenerAdvice;
+import com.drevotiuk.tracing.SlowNotificationRecorder;
+import com.drevotiuk.tracing.TracingListenerAdvice;
+import com.drevotiuk.tracing.TracingMessagePostProcessor;
 
 /**
  * Configuration class for defining beans in the Spring application context.
@@ -16,7 +41,38 @@ import org.springframework.core.io.ResourceLoader;
  * loading.
  */
 @Configuration
+@EnableConfigurationProperties(EmailAssetProperties.class)
 public class AppConfig {
+  @Value("${rabbitmq.listener.shutdown-timeout:10000}")
+  private long listenerShutdownTimeout;
+
+  @Value("${notifications.user-service.reply-timeout:3000}")
+  private long userServiceReplyTimeout;
+  @Value("${notifications.user-service.limiter.initial-limit:10}")
+  private int userServiceInitialLimit;
+  @Value("${notifications.user-service.limiter.min-limit:1}")
+  private int userServiceMinLimit;
+  @Value("${notifications.user-service.limiter.max-limit:100}")
+  private int userServiceMaxLimit;
+  @Value("${notifications.user-service.limiter.backoff-ratio:0.9}")
+  private double userServiceBackoffRatio;
+  @Value("${notifications.user-service.limiter.latency-threshold:500}")
+  private long userServiceLatencyThreshold;
+  @Value("${notifications.user-service.circuit-breaker.failure-threshold:20}")
+  private int userServiceFailureThreshold;
+  @Value("${notifications.user-service.circuit-breaker.open-duration:10000}")
+  private long userServiceOpenDuration;
+  @Value("${notifications.user-service.retry.max-attempts:5}")
+  private int userServiceRetryMaxAttempts;
+  @Value("${notifications.user-service.retry.initial-interval:1000}")
+  private long userServiceRetryInitialInterval;
+  @Value("${notifications.user-service.retry.multiplier:2.0}")
+  private double userServiceRetryMultiplier;
+  @Value("${notifications.user-service.retry.max-interval:8000}")
+  private long userServiceRetryMaxInterval;
+  @Value("${notifications.delayed.reject-delay:5000}")
+  private long delayedRejectDelay;
+
   /**
    * Creates a {@link ResourceLoader} bean to load resources in the application.
    *
@@ -31,15 +87,16 @@ public class AppConfig {
    * Creates a {@link MessageConverter} bean to handle JSON message conversion.
    * 
    * <p>
-   * This bean uses the {@link Jackson2JsonMessageConverter} to convert messages
-   * to and from JSON format.
+   * This bean uses the {@link NotificationMessageConverter} to convert incoming
+   * notification DTOs, and the {@link Jackson2JsonMessageConverter} to convert
+   * outgoing messages to JSON format.
    *
-   * @return a {@link Jackson2JsonMessageConverter} instance for JSON message
+   * @return a {@link NotificationMessageConverter} instance for message
    *         conversion
    */
   @Bean
   public MessageConverter messageConverter() {
-    return new Jackson2JsonMessageConverter();
+    return new NotificationMessageConverter(new Jackson2JsonMessageConverter());
   }
 
   /**
@@ -49,16 +106,169 @@ public class AppConfig {
    * <p>
    * This method configures a {@link RabbitTemplate} with a connection factory and
    * assigns
-   * the {@link MessageConverter} for JSON message conversion.
+   * the {@link MessageConverter} for JSON message conversion. The reply timeout
+   * bounds how long a user lookup waits for the user service, and the current
+   * notification trace is propagated on outgoing messages. The bean is
+   * declared as a {@link RabbitTemplate}, so it replaces the template that
+   * Spring Boot would otherwise create, and as the primary one, so it is
+   * injected wherever no other template is requested by name.
    *
    * @param connectionFactory the RabbitMQ connection factory
    * @return a configured {@link RabbitTemplate} with JSON message conversion
    *         capabilities
    */
   @Bean
-  public AmqpTemplate amqpTemplate(ConnectionFactory connectionFactory) {
+  @Primary
+  public RabbitTemplate amqpTemplate(ConnectionFactory connectionFactory) {
     RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
     rabbitTemplate.setMessageConverter(messageConverter());
+    rabbitTemplate.setReplyTimeout(userServiceReplyTimeout);
+    rabbitTemplate.setBeforePublishPostProcessors(new TracingMessagePostProcessor());
+    return rabbitTemplate;
+  }
+
+  /**
+   * Creates the {@link RabbitTemplate} the {@link DelayedNotificationScheduler}
+   * delivers due messages with.
+   *
+   * <p>
+   * The messages are published as mandatory, so the broker returns a message
+   * that no queue takes instead of dropping it, and the return is reported on
+   * the correlation data of the publisher confirm. The messages are already
+   * converted and carry their own trace headers, so no converter or post
+   * processor is set.
+   *
+   * @param connectionFactory the RabbitMQ connection factory
+   * @return a mandatory {@link RabbitTemplate}
+   */
+  @Bean
+  public RabbitTemplate delayedNotificationTemplate(ConnectionFactory connectionFactory) {
+    RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+    rabbitTemplate.setMandatory(true);
     return rabbitTemplate;
   }
+
+  /**
+   * Creates the {@link AdaptiveConcurrencyLimiter} for user lookups.
+   *
+   * @return an {@link AdaptiveConcurrencyLimiter} for the user service RPC
+   */
+  @Bean
+  public AdaptiveConcurrencyLimiter userServiceLimiter() {
+    return new AdaptiveConcurrencyLimiter(userServiceInitialLimit, userServiceMinLimit, userServiceMaxLimit,
+        userServiceBackoffRatio, TimeUnit.MILLISECONDS.toNanos(userServiceLatencyThreshold));
+  }
+
+  /**
+   * Creates the {@link CircuitBreaker} for user lookups.
+   *
+   * @return a {@link CircuitBreaker} for the user service RPC
+   */
+  @Bean
+  public CircuitBreaker userServiceCircuitBreaker() {
+    return new CircuitBreaker(userServiceFailureThreshold, TimeUnit.MILLISECONDS.toNanos(userServiceOpenDuration));
+  }
+
+  /**
+   * Creates the {@link CancellableSleeper} of the user service retry back-off
+   * and the delayed notification reject delay, which the
+   * {@link com.drevotiuk.service.GracefulShutdownCoordinator} cancels on
+   * shutdown.
+   *
+   * @return a {@link CancellableSleeper} instance
+   */
+  @Bean
+  public CancellableSleeper userServiceRetrySleeper() {
+    return new CancellableSleeper();
+  }
+
+  /**
+   * Creates the listener advice that defers notifications while the user
+   * service is unavailable.
+   *
+   * <p>
+   * A listener invocation that fails with
+   * {@link UserServiceUnavailableException} is retried on the listener thread
+   * with exponential back-off, so the delivery is not requeued and redelivered
+   * immediately while the circuit breaker is open. Blocking the listener thread
+   * also stops it from consuming more messages in the meantime. When the
+   * attempts are exhausted, the {@link ImmediateRequeueMessageRecoverer}
+   * returns the delivery to the broker; the stateless default would log it
+   * and acknowledge it, losing the notification. Other failures are not
+   * retried.
+   *
+   * <p>
+   * The back-off sleeps are cancelled on shutdown, which ends the retries and
+   * returns the delivery to the broker, so no retry runs after the container
+   * has stopped and closed the channel.
+   *
+   * @param retrySleeper the sleeper of the back-off
+   * @return a stateless {@link RetryOperationsInterceptor}
+   */
+  @Bean
+  public RetryOperationsInterceptor userServiceRetryAdvice(CancellableSleeper retrySleeper) {
+    SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy(userServiceRetryMaxAttempts,
+        Collections.singletonMap(UserServiceUnavailableException.class, true), true);
+    ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
+    backOffPolicy.setInitialInterval(userServiceRetryInitialInterval);
+    backOffPolicy.setMultiplier(userServiceRetryMultiplier);
+    backOffPolicy.setMaxInterval(userServiceRetryMaxInterval);
+    backOffPolicy.setSleeper(retrySleeper);
+    return RetryInterceptorBuilder.stateless()
+        .retryPolicy(retryPolicy)
+        .backOffPolicy(backOffPolicy)
+        .recoverer(new ImmediateRequeueMessageRecoverer())
+        .build();
+  }
+
+  /**
+   * Creates the {@link InFlightListenerAdvice} that counts the notifications
+   * being processed by the listeners.
+   *
+   * @return an {@link InFlightListenerAdvice} instance
+   */
+  @Bean
+  public InFlightListenerAdvice inFlightListenerAdvice() {
+    return new InFlightListenerAdvice();
+  }
+
+  /**
+   * Creates the {@link SimpleRabbitListenerContainerFactory} used by the
+   * {@code @RabbitListener} methods.
+   *
+   * <p>
+   * The factory keeps the settings from {@code spring.rabbitmq.listener.simple}
+   * and bounds how long a stopping container waits for in-flight listener
+   * invocations. Deliveries that are still unacknowledged when the timeout
+   * expires are returned to the broker when the channel is closed, and are
+   * counted through the {@link InFlightListenerAdvice}. Every consumed message
+   * is traced by a {@link TracingListenerAdvice}, and messages with a future
+   * send-at time are held by a {@link DelayedDeliveryAdvice} before they reach
+   * the listener; one that cannot be stored is returned to the broker after the
+   * reject delay. Lookups rejected by the user service guard are retried by
+   * the {@code userServiceRetryAdvice}.
+   *
+   * @param configurer        the Spring Boot configurer for listener container
+   *                          factories
+   * @param connectionFactory the RabbitMQ connection factory
+   * @param inFlightAdvice    the advice counting in-flight notifications
+   * @param retryAdvice       the advice retrying rejected user lookups
+   * @param retrySleeper      the sleeper of the back-offs, cancelled on
+   *                          shutdown
+   * @param recorder          the recorder of the slowest notification traces
+   * @param scheduler         the scheduler of delayed notifications
+   * @return a configured {@link SimpleRabbitListenerContainerFactory}
+   */
+  @Bean
+  public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+      InFlightListenerAdvice inFlightAdvice, RetryOperationsInterceptor retryAdvice,
+      CancellableSleeper retrySleeper, SlowNotificationRecorder recorder, DelayedNotificationScheduler scheduler) {
+    SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    configurer.configure(factory, connectionFactory);
+    factory.setContainerCustomizer(container -> container.setShutdownTimeout(listenerShutdownTimeout));
+    factory.setAdviceChain(inFlightAdvice, new DelayedDeliveryAdvice(scheduler, retrySleeper, delayedRejectDelay),
+        new TracingListenerAdvice(recorder), retryAdvice);
+    return factory;
+  }
 }
@@ -0,0 +1,57 @@
+package com.drevotiuk.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Configuration properties of the static assets that can be added to emails.
+ *
+ * <p>
+ * Assets are configured under {@code notifications.email.assets}, keyed by
+ * name, and each email selects the assets it needs by name. Inline assets are
+ * referenced from the templates as {@code cid:<name>}, the other assets are
+ * attached as files:
+ *
+ * <pre>
+ * notifications:
+ *   email:
+ *     assets:
+ *       logo:
+ *         path: classpath:assets/logo.png
+ *         content-type: image/png
+ *       terms:
+ *         path: classpath:assets/terms.pdf
+ *         content-type: application/pdf
+ *         inline: false
+ *         file-name: terms.pdf
+ * </pre>
+ */
+@ConfigurationProperties(prefix = "notifications.email")
+@Getter
+@Setter
+public class EmailAssetProperties {
+  /** The assets that can be added to emails, keyed by name. */
+  private Map<String, Asset> assets = new LinkedHashMap<>();
+
+  /** A single static email asset. */
+  @Getter
+  @Setter
+  public static class Asset {
+    /** The resource location of the asset. */
+    private String path;
+
+    /** The MIME type of the asset. */
+    private String contentType = "application/octet-stream";
+
+    /** Whether the asset is an inline part or an attachment. */
+    private boolean inline = true;
+
+    /** The file name of an attachment. */
+    private String fileName;
+  }
+}
@@ -5,6 +5,7 @@ import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -45,9 +46,14 @@ public class RabbitMQConfig {
   /**
    * Defines the {@link Queue} bean for email verification messages.
    * 
+   * <p>
+   * The queue is replaced by the shard queues of {@link ShardedRabbitMQConfig}
+   * when sharding is enabled.
+   * 
    * @return a {@link Queue} configured with the email verification queue name
    */
   @Bean
+  @ConditionalOnProperty(name = "rabbitmq.sharding.enabled", havingValue = "false", matchIfMissing = true)
   public Queue emailVerificationQueue() {
     return new Queue(emailVerificationQueue);
   }
@@ -55,9 +61,14 @@ public class RabbitMQConfig {
   /**
    * Defines the {@link Queue} bean for order creation messages.
    * 
+   * <p>
+   * The queue is replaced by the shard queues of {@link ShardedRabbitMQConfig}
+   * when sharding is enabled.
+   * 
    * @return a {@link Queue} configured with the order-created queue name
    */
   @Bean
+  @ConditionalOnProperty(name = "rabbitmq.sharding.enabled", havingValue = "false", matchIfMissing = true)
   public Queue orderQueue() {
     return new Queue(orderQueue);
   }
@@ -68,11 +79,13 @@ public class RabbitMQConfig {
    * 
    * <p>
    * This binding uses the email verification routing key to route messages to the
-   * appropriate queue.
+   * appropriate queue. It is replaced by the shard bindings of
+   * {@link ShardedRabbitMQConfig} when sharding is enabled.
    * 
    * @return a {@link Binding} for the email verification queue
    */
   @Bean
+  @ConditionalOnProperty(name = "rabbitmq.sharding.enabled", havingValue = "false", matchIfMissing = true)
   public Binding emailVerificationBinding() {
     return BindingBuilder.bind(emailVerificationQueue()).to(notificationServiceExchange())
         .with(emailVerificationRoutingKey);
@@ -84,11 +97,13 @@ public class RabbitMQConfig {
    * 
    * <p>
    * This binding uses the order-created routing key to route messages to the
-   * appropriate queue.
+   * appropriate queue. It is replaced by the shard bindings of
+   * {@link ShardedRabbitMQConfig} when sharding is enabled.
    * 
    * @return a {@link Binding} for the order-created queue
    */
   @Bean
+  @ConditionalOnProperty(name = "rabbitmq.sharding.enabled", havingValue = "false", matchIfMissing = true)
   public Binding orderBinding() {
     return BindingBuilder.bind(orderQueue()).to(notificationServiceExchange())
         .with(orderRoutingKey);
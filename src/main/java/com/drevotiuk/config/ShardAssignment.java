@@ -0,0 +1,142 @@
+package com.drevotiuk.config;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Defines which queues this instance consumes notifications from.
+ *
+ * <p>
+ * Without sharding, every instance consumes the shared email verification and
+ * order-created queues. With sharding enabled, each message type is spread
+ * over a fixed number of shard queues by {@link ShardedRabbitMQConfig}, and
+ * the instance consumes only the shards it claims. The shards are either
+ * listed explicitly in {@code rabbitmq.sharding.claimed-shards}, or spread
+ * over the instances by {@code rabbitmq.sharding.instance-index} and
+ * {@code rabbitmq.sharding.instance-count}: an instance claims every shard
+ * whose number modulo the instance count equals its index. Enabling sharding
+ * without either setting is rejected, since every instance would otherwise
+ * claim all shards, and the single active consumer of each shard queue would
+ * leave all instances but the first one idle.
+ *
+ * <p>
+ * Shards are not failed over: the notifications of a stopped instance stay in
+ * its shard queues until an instance with the same claim is started.
+ *
+ * <p>
+ * The listener methods refer to this bean by name to resolve their queues.
+ */
+@Component("shardAssignment")
+public class ShardAssignment {
+  private final String emailVerificationQueue;
+  private final String orderQueue;
+  private final boolean enabled;
+  private final int shardCount;
+  private final int[] claimedShards;
+
+  public ShardAssignment(@Value("${rabbitmq.queue.email-verification}") String emailVerificationQueue,
+      @Value("${rabbitmq.queue.order-created}") String orderQueue,
+      @Value("${rabbitmq.sharding.enabled:false}") boolean enabled,
+      @Value("${rabbitmq.sharding.shards:4}") int shardCount,
+      @Value("${rabbitmq.sharding.claimed-shards:}") int[] claimedShards,
+      @Value("${rabbitmq.sharding.instance-index:-1}") int instanceIndex,
+      @Value("${rabbitmq.sharding.instance-count:0}") int instanceCount) {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Shard count must be positive");
+    }
+    int[] claimed = enabled && claimedShards.length == 0
+        ? distributedShards(shardCount, instanceIndex, instanceCount)
+        : claimedShards.clone();
+    for (int shard : claimed) {
+      if (shard < 0 || shard >= shardCount) {
+        throw new IllegalArgumentException("Claimed shard " + shard + " is out of range [0, " + shardCount + ")");
+      }
+    }
+    this.emailVerificationQueue = emailVerificationQueue;
+    this.orderQueue = orderQueue;
+    this.enabled = enabled;
+    this.shardCount = shardCount;
+    this.claimedShards = claimed;
+  }
+
+  /**
+   * Returns the name of a shard queue.
+   *
+   * @param queue the name of the unsharded queue
+   * @param shard the shard number
+   * @return the shard queue name
+   */
+  public static String shardQueue(String queue, int shard) {
+    return queue + ".shard-" + shard;
+  }
+
+  /**
+   * Returns the name of the queue that receives the notifications published
+   * without the hash header.
+   *
+   * @param queue the name of the unsharded queue
+   * @return the unrouted queue name
+   */
+  public static String unroutedQueue(String queue) {
+    return queue + ".unrouted";
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Returns the email verification queues consumed by this instance.
+   *
+   * @return the queue names
+   */
+  public String[] getEmailVerificationQueues() {
+    return queues(emailVerificationQueue);
+  }
+
+  /**
+   * Returns the order-created queues consumed by this instance.
+   *
+   * @return the queue names
+   */
+  public String[] getOrderQueues() {
+    return queues(orderQueue);
+  }
+
+  private String[] queues(String queue) {
+    if (!enabled) {
+      return new String[] { queue };
+    }
+    return Arrays.stream(claimedShards).mapToObj(shard -> shardQueue(queue, shard)).toArray(String[]::new);
+  }
+
+  /**
+   * Returns the shards of an instance when shards are spread over the
+   * instances.
+   *
+   * @param shardCount    the number of shards
+   * @param instanceIndex the index of this instance
+   * @param instanceCount the number of instances
+   * @return the shards claimed by this instance
+   * @throws IllegalArgumentException if the instance settings are missing or
+   *                                  invalid, or the instance gets no shard
+   */
+  private static int[] distributedShards(int shardCount, int instanceIndex, int instanceCount) {
+    if (instanceCount < 1) {
+      throw new IllegalArgumentException("Sharding is enabled, but neither rabbitmq.sharding.claimed-shards nor "
+          + "rabbitmq.sharding.instance-index and rabbitmq.sharding.instance-count are set");
+    }
+    if (instanceIndex < 0 || instanceIndex >= instanceCount) {
+      throw new IllegalArgumentException(
+          "Instance index " + instanceIndex + " is out of range [0, " + instanceCount + ")");
+    }
+    if (instanceCount > shardCount) {
+      throw new IllegalArgumentException(
+          "Instance count " + instanceCount + " exceeds the shard count " + shardCount);
+    }
+    return IntStream.range(0, shardCount).filter(shard -> shard % instanceCount == instanceIndex).toArray();
+  }
+}
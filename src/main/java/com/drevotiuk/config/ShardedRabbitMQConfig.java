@@ -0,0 +1,175 @@
+package com.drevotiuk.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.CustomExchange;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.drevotiuk.service.UnroutedNotificationForwarder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * RabbitMQ configuration of the sharded notification topology.
+ *
+ * <p>
+ * Enabled by {@code rabbitmq.sharding.enabled}. For every notification type,
+ * the notification service exchange forwards messages to a consistent-hash
+ * exchange, which spreads them over the shard queues by the value of the hash
+ * header. Producers set that header to the user ID or email, so all
+ * notifications of a user land on one shard queue. Shard queues allow a single
+ * active consumer, which keeps the notifications of a user in order and on one
+ * instance; the email is sent on the listener thread before the next message
+ * of the shard is processed. The shards are assigned to the instances by
+ * {@link ShardAssignment}.
+ *
+ * <p>
+ * Producer contract: every notification must carry the hash header
+ * ({@code rabbitmq.sharding.hash-header}, {@code shard-key} by default) with a
+ * stable per-user value. The consistent-hash exchange cannot place a message
+ * without it, so such messages go to the alternate exchange of the
+ * consistent-hash exchange and its unrouted queue. The
+ * {@link UnroutedNotificationForwarder} logs and counts them and forwards them
+ * to the first shard, so they are delivered but lose the per-user ordering.
+ *
+ * <p>
+ * Requires the {@code rabbitmq_consistent_hash_exchange} broker plugin. The
+ * consistent-hash exchanges declared by earlier deployments have no alternate
+ * exchange, and RabbitMQ refuses to redeclare an exchange with different
+ * arguments; delete them before the first start with this configuration.
+ *
+ * <p>
+ * Migrating an existing deployment: the shared queues are no longer declared
+ * when sharding is enabled, but declaring never removes anything from the
+ * broker. The bindings of the shared queues to the notification service
+ * exchange created by earlier deployments stay in place, so every message
+ * would also be routed to a queue nobody consumes. Stop the producers or let
+ * the unsharded consumers drain the shared queues, then delete the shared
+ * queues (which also removes their bindings) before starting the sharded
+ * instances.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rabbitmq.sharding.enabled", havingValue = "true")
+public class ShardedRabbitMQConfig {
+  private static final String CONSISTENT_HASH_EXCHANGE = "x-consistent-hash";
+  private static final String SHARD_WEIGHT = "1";
+
+  @Value("${rabbitmq.queue.email-verification}")
+  private String emailVerificationQueue;
+  @Value("${rabbitmq.queue.order-created}")
+  private String orderQueue;
+
+  @Value("${rabbitmq.routingkey.email-verification}")
+  private String emailVerificationRoutingKey;
+  @Value("${rabbitmq.routingkey.order-created}")
+  private String orderRoutingKey;
+
+  @Value("${rabbitmq.sharding.hash-header:shard-key}")
+  private String hashHeader;
+  @Value("${rabbitmq.listener.shutdown-timeout:10000}")
+  private long listenerShutdownTimeout;
+
+  /**
+   * Defines the shards of the email verification queue.
+   *
+   * @param notificationServiceExchange the notification service exchange
+   * @param shardAssignment             the shard assignment of this instance
+   * @return the {@link Declarables} of the email verification shards
+   */
+  @Bean
+  public Declarables emailVerificationShards(DirectExchange notificationServiceExchange,
+      ShardAssignment shardAssignment) {
+    return shards(notificationServiceExchange, emailVerificationRoutingKey, emailVerificationQueue,
+        shardAssignment.getShardCount());
+  }
+
+  /**
+   * Defines the shards of the order-created queue.
+   *
+   * @param notificationServiceExchange the notification service exchange
+   * @param shardAssignment             the shard assignment of this instance
+   * @return the {@link Declarables} of the order-created shards
+   */
+  @Bean
+  public Declarables orderShards(DirectExchange notificationServiceExchange, ShardAssignment shardAssignment) {
+    return shards(notificationServiceExchange, orderRoutingKey, orderQueue, shardAssignment.getShardCount());
+  }
+
+  /**
+   * Defines the listener container that forwards the notifications published
+   * without the hash header to the first shard of their type.
+   *
+   * @param connectionFactory the RabbitMQ connection factory
+   * @param rabbitTemplate    the template used to forward notifications
+   * @param meterRegistry     the registry of the unrouted notification counter
+   * @return the {@link SimpleMessageListenerContainer} of the unrouted queues
+   */
+  @Bean
+  public SimpleMessageListenerContainer unroutedNotificationContainer(ConnectionFactory connectionFactory,
+      RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+    Map<String, String> fallbackQueues = new HashMap<>();
+    fallbackQueues.put(ShardAssignment.unroutedQueue(emailVerificationQueue),
+        ShardAssignment.shardQueue(emailVerificationQueue, 0));
+    fallbackQueues.put(ShardAssignment.unroutedQueue(orderQueue), ShardAssignment.shardQueue(orderQueue, 0));
+
+    SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
+    container.setQueueNames(fallbackQueues.keySet().toArray(new String[0]));
+    container.setShutdownTimeout(listenerShutdownTimeout);
+    container.setMessageListener(
+        new UnroutedNotificationForwarder(rabbitTemplate, fallbackQueues, hashHeader, meterRegistry));
+    return container;
+  }
+
+  /**
+   * Builds the consistent-hash exchange with its alternate exchange and
+   * unrouted queue, its binding to the notification service exchange, and the
+   * shard queues with their bindings.
+   *
+   * @param source     the notification service exchange
+   * @param routingKey the routing key of the notification type
+   * @param queue      the name of the unsharded queue
+   * @param shardCount the number of shards
+   * @return the {@link Declarables} of the shards
+   */
+  private Declarables shards(DirectExchange source, String routingKey, String queue, int shardCount) {
+    String hashExchangeName = source.getName() + "." + routingKey + ".sharded";
+    FanoutExchange unroutedExchange = new FanoutExchange(hashExchangeName + ".unrouted");
+    Queue unroutedQueue = QueueBuilder.durable(ShardAssignment.unroutedQueue(queue)).build();
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("hash-header", hashHeader);
+    arguments.put("alternate-exchange", unroutedExchange.getName());
+    CustomExchange hashExchange = new CustomExchange(hashExchangeName, CONSISTENT_HASH_EXCHANGE, true, false,
+        arguments);
+
+    List<Declarable> declarables = new ArrayList<>();
+    declarables.add(unroutedExchange);
+    declarables.add(unroutedQueue);
+    declarables.add(BindingBuilder.bind(unroutedQueue).to(unroutedExchange));
+    declarables.add(hashExchange);
+    declarables.add(BindingBuilder.bind(hashExchange).to(source).with(routingKey));
+    for (int shard = 0; shard < shardCount; shard++) {
+      Queue shardQueue = QueueBuilder.durable(ShardAssignment.shardQueue(queue, shard))
+          .singleActiveConsumer()
+          .build();
+      declarables.add(shardQueue);
+      declarables.add(BindingBuilder.bind(shardQueue).to(hashExchange).with(SHARD_WEIGHT).noargs());
+    }
+    return new Declarables(declarables);
+  }
+}
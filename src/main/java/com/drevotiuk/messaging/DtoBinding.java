@@ -0,0 +1,81 @@
+package com.drevotiuk.messaging;
+
+import java.util.function.Function;
+
+/**
+ * A precomputed field binding of a notification DTO.
+ *
+ * <p>
+ * The binding lists the serialized fields of the DTO in a fixed order together
+ * with their kinds, and knows how to create the DTO from the field values and
+ * how to extract them back, so no reflection is needed at conversion time.
+ *
+ * @param <T> the DTO type
+ */
+final class DtoBinding<T> {
+  /** The kind of a bound field, which defines how its value is read. */
+  enum FieldKind {
+    STRING, DECIMAL
+  }
+
+  private final Class<T> type;
+  private final String[] names;
+  private final FieldKind[] kinds;
+  private final Function<Object[], T> factory;
+  private final Function<T, Object[]> extractor;
+
+  DtoBinding(Class<T> type, String[] names, FieldKind[] kinds,
+      Function<Object[], T> factory, Function<T, Object[]> extractor) {
+    if (names.length != kinds.length) {
+      throw new IllegalArgumentException("Every field of " + type.getName() + " must have a kind");
+    }
+    this.type = type;
+    this.names = names;
+    this.kinds = kinds;
+    this.factory = factory;
+    this.extractor = extractor;
+  }
+
+  Class<T> type() {
+    return type;
+  }
+
+  int size() {
+    return names.length;
+  }
+
+  String name(int index) {
+    return names[index];
+  }
+
+  FieldKind kind(int index) {
+    return kinds[index];
+  }
+
+  /**
+   * Returns the position of the field with the given name.
+   *
+   * <p>
+   * The DTOs have a handful of fields, so a linear scan is cheaper than a hash
+   * lookup.
+   *
+   * @param name the serialized field name
+   * @return the field position, or {@code -1} if the field is not bound
+   */
+  int indexOf(String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  T create(Object[] values) {
+    return factory.apply(values);
+  }
+
+  Object[] extract(Object value) {
+    return extractor.apply(type.cast(value));
+  }
+}
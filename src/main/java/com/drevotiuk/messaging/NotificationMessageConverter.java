@@ -0,0 +1,270 @@
+package com.drevotiuk.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import com.drevotiuk.messaging.DtoBinding.FieldKind;
+import com.drevotiuk.model.EmailVerificationDetails;
+import com.drevotiuk.model.OrderEmailDetails;
+import com.drevotiuk.model.UserView;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A {@link MessageConverter} specialized for the notification DTOs.
+ *
+ * <p>
+ * Incoming messages are converted only to the allow-listed types
+ * ({@link EmailVerificationDetails}, {@link OrderEmailDetails} and
+ * {@link UserView}). The target type is taken from the listener method
+ * argument when it is known, otherwise from the type id header; any other type
+ * is rejected. The body is parsed directly with a streaming parser using
+ * precomputed field bindings.
+ *
+ * <p>
+ * Besides JSON, a compact binary encoding is supported for the content type
+ * {@value #BINARY_CONTENT_TYPE}. Outgoing messages are converted by the
+ * delegate converter unless the binary content type is requested.
+ */
+public class NotificationMessageConverter implements MessageConverter {
+  /** The content type of the compact binary encoding. */
+  public static final String BINARY_CONTENT_TYPE = "application/x-notification-binary";
+
+  private static final byte BINARY_VERSION = 1;
+  private static final String TYPE_ID_HEADER = AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME;
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final int MAX_JSON_NULL_LENGTH = 16;
+
+  /**
+   * The bindings of the allow-listed types. Their field names, order and kinds
+   * must match the declared fields of the DTOs, which is verified by the tests.
+   */
+  static final List<DtoBinding<?>> BINDINGS = Arrays.asList(
+      new DtoBinding<>(EmailVerificationDetails.class,
+          new String[] { "email", "firstName", "link" },
+          new FieldKind[] { FieldKind.STRING, FieldKind.STRING, FieldKind.STRING },
+          values -> new EmailVerificationDetails((String) values[0], (String) values[1], (String) values[2]),
+          details -> new Object[] { details.getEmail(), details.getFirstName(), details.getLink() }),
+      new DtoBinding<>(OrderEmailDetails.class,
+          new String[] { "userId", "orderTime", "totalPrice" },
+          new FieldKind[] { FieldKind.STRING, FieldKind.STRING, FieldKind.DECIMAL },
+          values -> new OrderEmailDetails((String) values[0], (String) values[1], (BigDecimal) values[2]),
+          details -> new Object[] { details.getUserId(), details.getOrderTime(), details.getTotalPrice() }),
+      new DtoBinding<>(UserView.class,
+          new String[] { "firstName", "lastName", "email", "dateOfBirth" },
+          new FieldKind[] { FieldKind.STRING, FieldKind.STRING, FieldKind.STRING, FieldKind.STRING },
+          values -> new UserView((String) values[0], (String) values[1], (String) values[2], (String) values[3]),
+          user -> new Object[] { user.getFirstName(), user.getLastName(), user.getEmail(), user.getDateOfBirth() }));
+
+  private final MessageConverter delegate;
+  private final Map<Class<?>, DtoBinding<?>> bindingsByType = new HashMap<>();
+  private final Map<String, DtoBinding<?>> bindingsByTypeId = new HashMap<>();
+
+  /**
+   * Creates the converter.
+   *
+   * @param delegate the converter used for outgoing JSON messages
+   */
+  public NotificationMessageConverter(MessageConverter delegate) {
+    this.delegate = delegate;
+    for (DtoBinding<?> binding : BINDINGS) {
+      bindingsByType.put(binding.type(), binding);
+      bindingsByTypeId.put(binding.type().getName(), binding);
+    }
+  }
+
+  /**
+   * Converts an object to a message.
+   *
+   * <p>
+   * Allow-listed types are encoded in the compact binary form when the message
+   * properties request {@value #BINARY_CONTENT_TYPE}; everything else is
+   * converted by the delegate.
+   *
+   * @param object            the object to convert
+   * @param messageProperties the message properties
+   * @return the message
+   * @throws MessageConversionException if the object cannot be converted
+   */
+  @Override
+  public Message toMessage(Object object, MessageProperties messageProperties) {
+    DtoBinding<?> binding = bindingsByType.get(object.getClass());
+    if (binding == null || !BINARY_CONTENT_TYPE.equals(messageProperties.getContentType())) {
+      return delegate.toMessage(object, messageProperties);
+    }
+
+    try {
+      byte[] body = writeBinary(binding.extract(object));
+      messageProperties.setHeader(TYPE_ID_HEADER, binding.type().getName());
+      messageProperties.setContentLength(body.length);
+      return new Message(body, messageProperties);
+    } catch (IOException e) {
+      throw new MessageConversionException("Failed to encode " + binding.type().getName(), e);
+    }
+  }
+
+  /**
+   * Converts a message to one of the allow-listed types.
+   *
+   * <p>
+   * A JSON {@code null} body, such as the reply of the user service for an
+   * unknown user, is converted to {@code null} whatever its type id.
+   *
+   * @param message the message to convert
+   * @return the converted object, or {@code null} if the body is the JSON
+   *         {@code null}
+   * @throws MessageConversionException if the type is not allowed, the content
+   *                                    type is not supported or the body is
+   *                                    malformed
+   */
+  @Override
+  public Object fromMessage(Message message) {
+    MessageProperties properties = message.getMessageProperties();
+    String contentType = properties.getContentType();
+    boolean json = contentType != null && contentType.contains("json");
+    if (json && isJsonNull(message.getBody())) {
+      return null;
+    }
+
+    DtoBinding<?> binding = resolveBinding(properties);
+    try {
+      if (BINARY_CONTENT_TYPE.equals(contentType)) {
+        return binding.create(readBinary(message.getBody(), binding));
+      }
+      if (json) {
+        return binding.create(readJson(message.getBody(), binding));
+      }
+    } catch (MessageConversionException e) {
+      throw e;
+    } catch (IOException | RuntimeException e) {
+      throw new MessageConversionException("Failed to convert message to " + binding.type().getName(), e);
+    }
+    throw new MessageConversionException("Unsupported content type: " + contentType);
+  }
+
+  /**
+   * Resolves the binding of the target type of a message.
+   *
+   * @param properties the message properties
+   * @return the binding of the target type
+   * @throws MessageConversionException if the target type is unknown or not
+   *                                    allowed
+   */
+  private DtoBinding<?> resolveBinding(MessageProperties properties) {
+    Type inferredType = properties.getInferredArgumentType();
+    if (inferredType != null) {
+      DtoBinding<?> binding = bindingsByType.get(inferredType);
+      if (binding == null) {
+        throw new MessageConversionException("Type is not allowed: " + inferredType.getTypeName());
+      }
+      return binding;
+    }
+
+    Object typeId = properties.getHeaders().get(TYPE_ID_HEADER);
+    DtoBinding<?> binding = typeId == null ? null : bindingsByTypeId.get(typeId.toString());
+    if (binding == null) {
+      throw new MessageConversionException("Type is not allowed: " + typeId);
+    }
+    return binding;
+  }
+
+  /**
+   * Checks whether a JSON body is the {@code null} literal. Bodies longer than
+   * a padded literal are skipped without creating a parser.
+   */
+  private boolean isJsonNull(byte[] body) {
+    if (body.length > MAX_JSON_NULL_LENGTH) {
+      return false;
+    }
+    try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+      return parser.nextToken() == JsonToken.VALUE_NULL && parser.nextToken() == null;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private Object[] readJson(byte[] body, DtoBinding<?> binding) throws IOException {
+    Object[] values = new Object[binding.size()];
+    try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new MessageConversionException("Expected a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        int index = binding.indexOf(parser.getCurrentName());
+        JsonToken token = parser.nextToken();
+        if (index < 0) {
+          parser.skipChildren();
+          continue;
+        }
+        values[index] = readJsonValue(parser, token, binding.kind(index));
+      }
+    }
+    return values;
+  }
+
+  private Object readJsonValue(JsonParser parser, JsonToken token, FieldKind kind) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (!token.isScalarValue()) {
+      throw new MessageConversionException("Unexpected " + token + " for field " + parser.getCurrentName());
+    }
+    if (kind == FieldKind.DECIMAL) {
+      return token.isNumeric() ? parser.getDecimalValue() : new BigDecimal(parser.getText());
+    }
+    return parser.getText();
+  }
+
+  private byte[] writeBinary(Object[] values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(BINARY_VERSION);
+      out.writeByte(values.length);
+      for (Object value : values) {
+        out.writeBoolean(value != null);
+        if (value != null) {
+          out.writeUTF(value.toString());
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private Object[] readBinary(byte[] body, DtoBinding<?> binding) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+      byte version = in.readByte();
+      if (version != BINARY_VERSION) {
+        throw new MessageConversionException("Unsupported binary encoding version: " + version);
+      }
+      int size = in.readUnsignedByte();
+      if (size != binding.size()) {
+        throw new MessageConversionException("Expected " + binding.size() + " fields but got " + size);
+      }
+
+      Object[] values = new Object[size];
+      for (int i = 0; i < size; i++) {
+        if (in.readBoolean()) {
+          String text = in.readUTF();
+          values[i] = binding.kind(i) == FieldKind.DECIMAL ? new BigDecimal(text) : text;
+        }
+      }
+      return values;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.drevotiuk.model.exception;
+
+/**
+ * Custom exception class that indicates error happened while storing or
+ * loading a delayed notification.
+ * This exception is typically thrown by the delayed notification scheduler.
+ */
+public class DelayedNotificationException extends RuntimeException {
+  private static final long serialVersionUID = 5129734805316627904L;
+
+  public DelayedNotificationException(String message) {
+    super(message);
+  }
+
+  public DelayedNotificationException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public DelayedNotificationException(Throwable cause) {
+    super(cause);
+  }
+}
@@ -0,0 +1,23 @@
+package com.drevotiuk.model.exception;
+
+/**
+ * Custom exception class that indicates the user service cannot be called at
+ * the moment.
+ * This exception is typically thrown when the user service is overloaded or
+ * failing, so the message can be requeued and processed later.
+ */
+public class UserServiceUnavailableException extends RuntimeException {
+  private static final long serialVersionUID = -2946170381624019245L;
+
+  public UserServiceUnavailableException(String message) {
+    super(message);
+  }
+
+  public UserServiceUnavailableException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public UserServiceUnavailableException(Throwable cause) {
+    super(cause);
+  }
+}
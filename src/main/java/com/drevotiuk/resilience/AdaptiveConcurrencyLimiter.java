@@ -0,0 +1,94 @@
+package com.drevotiuk.resilience;
+
+/**
+ * A concurrency limiter that adapts its limit using the additive increase /
+ * multiplicative decrease (AIMD) algorithm.
+ *
+ * <p>
+ * The limit grows by one after every fast call made while the limiter is at
+ * least half utilized, and shrinks by the backoff ratio after every call that
+ * is slower than the latency threshold or is dropped (timed out or failed).
+ * Calls are rejected while the number of in-flight calls has reached the
+ * limit.
+ */
+public class AdaptiveConcurrencyLimiter {
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long latencyThresholdNanos;
+
+  private double limit;
+  private int inFlight;
+
+  /**
+   * Creates the limiter.
+   *
+   * @param initialLimit          the limit to start with
+   * @param minLimit              the lowest limit
+   * @param maxLimit              the highest limit
+   * @param backoffRatio          the factor the limit is multiplied by on
+   *                              congestion, between 0 and 1
+   * @param latencyThresholdNanos the round-trip time above which a call is
+   *                              treated as a congestion signal
+   */
+  public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+      long latencyThresholdNanos) {
+    if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+    }
+    if (backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyThresholdNanos = latencyThresholdNanos;
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Tries to start a call.
+   *
+   * @return {@code true} if the call may proceed, {@code false} if the limit is
+   *         reached
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= getLimit()) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Completes a call that returned a result.
+   *
+   * @param rttNanos the round-trip time of the call
+   */
+  public synchronized void onSuccess(long rttNanos) {
+    int inFlightBefore = inFlight--;
+    if (rttNanos > latencyThresholdNanos) {
+      backoff();
+    } else if (inFlightBefore * 2 >= limit) {
+      limit = Math.min(maxLimit, limit + 1);
+    }
+  }
+
+  /** Completes a call that timed out or failed. */
+  public synchronized void onDropped() {
+    inFlight--;
+    backoff();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  private void backoff() {
+    limit = Math.max(minLimit, limit * backoffRatio);
+  }
+}
@@ -0,0 +1,44 @@
+package com.drevotiuk.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.retry.backoff.Sleeper;
+
+/**
+ * A retry back-off {@link Sleeper} that can be cancelled.
+ *
+ * <p>
+ * Once cancelled, every running and future sleep ends at once with an
+ * {@link InterruptedException}, which makes the back-off policy give up the
+ * remaining retries. It is cancelled on shutdown, so listener threads do not
+ * keep sleeping in a back-off, and then retrying, after their container has
+ * stopped.
+ */
+public class CancellableSleeper implements Sleeper {
+  private static final long serialVersionUID = -3866712410625184094L;
+
+  private boolean cancelled;
+
+  @Override
+  public synchronized void sleep(long backOffPeriod) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backOffPeriod);
+    long remaining;
+    while (!cancelled && (remaining = deadline - System.nanoTime()) > 0) {
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    if (cancelled) {
+      throw new InterruptedException("Retry back-off cancelled");
+    }
+  }
+
+  /** Cancels the running and future sleeps. */
+  public synchronized void cancel() {
+    cancelled = true;
+    notifyAll();
+  }
+
+  /** Allows sleeping again after a {@link #cancel()}. */
+  public synchronized void resume() {
+    cancelled = false;
+  }
+}
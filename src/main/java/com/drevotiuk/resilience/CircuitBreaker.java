@@ -0,0 +1,95 @@
+package com.drevotiuk.resilience;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A circuit breaker driven by consecutive failures.
+ *
+ * <p>
+ * The breaker opens after the configured number of consecutive failures and
+ * rejects every call while open. Once the open duration elapses, a single
+ * trial call is let through: its success closes the breaker, its failure opens
+ * it again.
+ */
+public class CircuitBreaker {
+  /** The state of a {@link CircuitBreaker}. */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final LongSupplier nanoClock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean trialInFlight;
+
+  /**
+   * Creates the breaker.
+   *
+   * @param failureThreshold  the number of consecutive failures that opens the
+   *                          breaker
+   * @param openDurationNanos how long the breaker stays open before a trial
+   *                          call
+   */
+  public CircuitBreaker(int failureThreshold, long openDurationNanos) {
+    this(failureThreshold, openDurationNanos, System::nanoTime);
+  }
+
+  CircuitBreaker(int failureThreshold, long openDurationNanos, LongSupplier nanoClock) {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("Failure threshold must be positive");
+    }
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = openDurationNanos;
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * Checks whether a call may proceed.
+   *
+   * @return {@code true} if the call is permitted
+   */
+  public synchronized boolean tryAcquirePermission() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        trialInFlight = true;
+        return true;
+      default:
+        if (trialInFlight) {
+          return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+  }
+
+  /** Records a successful call. */
+  public synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    trialInFlight = false;
+  }
+
+  /** Records a failed or rejected call. */
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = nanoClock.getAsLong();
+      trialInFlight = false;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+}
@@ -0,0 +1,65 @@
+package com.drevotiuk.scheduling;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.amqp.core.Message;
+
+import com.drevotiuk.model.exception.DelayedNotificationException;
+import com.drevotiuk.resilience.CancellableSleeper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A listener container advice that hands messages with a future send-at time
+ * to the {@link DelayedNotificationScheduler} instead of the listener.
+ *
+ * <p>
+ * A held message is acknowledged once it is stored. If storing fails, the
+ * listener thread waits for the reject delay before the exception makes the
+ * container return the message to the broker, so a failing store is not hit
+ * by the same message in a tight redelivery loop, and the listener stops
+ * consuming in the meantime. The wait ends early on shutdown.
+ */
+@Slf4j
+public class DelayedDeliveryAdvice implements MethodInterceptor {
+  private final DelayedNotificationScheduler scheduler;
+  private final CancellableSleeper sleeper;
+  private final long rejectDelay;
+
+  /**
+   * Creates the advice.
+   *
+   * @param scheduler   the scheduler of delayed notifications
+   * @param sleeper     the sleeper of the reject delay, cancelled on shutdown
+   * @param rejectDelay the delay before a message that cannot be stored is
+   *                    returned to the broker, in milliseconds
+   */
+  public DelayedDeliveryAdvice(DelayedNotificationScheduler scheduler, CancellableSleeper sleeper, long rejectDelay) {
+    this.scheduler = scheduler;
+    this.sleeper = sleeper;
+    this.rejectDelay = rejectDelay;
+  }
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (arguments.length >= 2 && arguments[1] instanceof Message && defer((Message) arguments[1])) {
+      return null;
+    }
+    return invocation.proceed();
+  }
+
+  private boolean defer(Message message) {
+    try {
+      return scheduler.defer(message);
+    } catch (DelayedNotificationException e) {
+      log.warn("Returning delayed notification to the broker in {} ms", rejectDelay);
+      try {
+        sleeper.sleep(rejectDelay);
+      } catch (InterruptedException cancelled) {
+        log.debug("Reject delay cancelled on shutdown");
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.drevotiuk.scheduling;
+
+import org.springframework.amqp.core.Message;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A notification message held until its send-at time.
+ */
+@AllArgsConstructor
+@Getter
+public class DelayedNotification {
+  /** The time the notification is due, in epoch milliseconds. */
+  private long sendAt;
+
+  /** The queue the message is delivered to when it is due. */
+  private String queue;
+
+  /** The held message. */
+  private Message message;
+}
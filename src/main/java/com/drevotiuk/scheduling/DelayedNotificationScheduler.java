@@ -0,0 +1,354 @@
+package com.drevotiuk.scheduling;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.drevotiuk.model.exception.DelayedNotificationException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A component that holds notifications until their send-at time.
+ *
+ * <p>
+ * A consumed message carrying the {@value #SEND_AT_HEADER} header (epoch
+ * milliseconds) in the future is written to the
+ * {@link DelayedNotificationStore} and scheduled in a
+ * {@link HierarchicalTimingWheel} instead of being processed. When it is due,
+ * the message is delivered back to the queue it was consumed from without the
+ * header, and goes through the regular email path. Pending notifications
+ * survive restarts, since they are replayed from the store on startup.
+ *
+ * <p>
+ * The original delivery is acknowledged once the message is stored, so the
+ * store is the only copy until the message is delivered again. It is
+ * published as mandatory with a publisher confirm, and marked as delivered
+ * only after the broker has acknowledged it and not returned it as
+ * unroutable; otherwise, or if no confirm arrives within the confirm timeout,
+ * it is retried after the retry delay. This requires the connection factory
+ * to have correlated publisher confirms and publisher returns enabled.
+ *
+ * <p>
+ * Once the delivered notifications take up most of the store, it is compacted
+ * on the ticker thread and the timers are rebuilt with the new offsets. The
+ * lock of the scheduler guards only the timers, so deferring a message waits
+ * neither for the compaction nor for other messages being forced to disk. An
+ * offset is scheduled only if it belongs to the generation of the store the
+ * timers were built for; an offset of an earlier generation is already among
+ * the rebuilt timers.
+ *
+ * <p>
+ * Producers use this, for example, to send verification reminders before the
+ * confirmation token expires.
+ */
+@Component
+@Slf4j
+public class DelayedNotificationScheduler implements SmartLifecycle {
+  /** The header carrying the send-at time in epoch milliseconds. */
+  public static final String SEND_AT_HEADER = "x-send-at";
+
+  private static final String DEFAULT_EXCHANGE = "";
+
+  private final RabbitTemplate rabbitTemplate;
+  private final DelayedNotificationStore store;
+  private final long tickMillis;
+  private final long retryDelay;
+  private final long confirmTimeout;
+
+  private final Counter scheduledCounter;
+  private final Counter deliveredCounter;
+
+  private HierarchicalTimingWheel wheel;
+  private long wheelGeneration;
+  private volatile int pending;
+  private long compactionRetryAt;
+  private ScheduledExecutorService ticker;
+  private volatile boolean running;
+
+  /**
+   * Creates the scheduler.
+   *
+   * @param rabbitTemplate      the template delivering due messages, which
+   *                            must publish them as mandatory
+   * @param meterRegistry       the registry of the scheduler metrics
+   * @param storePath           the path of the store log file
+   * @param tickMillis          the tick of the timers, in milliseconds
+   * @param retryDelay          the delay before a failed delivery is retried,
+   *                            in milliseconds
+   * @param confirmTimeout      how long the ticker waits for the publisher
+   *                            confirms of the due messages, in milliseconds
+   * @param compactionThreshold the size of the delivered records, in bytes,
+   *                            above which the store is compacted
+   */
+  public DelayedNotificationScheduler(@Qualifier("delayedNotificationTemplate") RabbitTemplate rabbitTemplate,
+      MeterRegistry meterRegistry,
+      @Value("${notifications.delayed.store-path:data/delayed-notifications.log}") String storePath,
+      @Value("${notifications.delayed.tick:100}") long tickMillis,
+      @Value("${notifications.delayed.retry-delay:5000}") long retryDelay,
+      @Value("${notifications.delayed.confirm-timeout:5000}") long confirmTimeout,
+      @Value("${notifications.delayed.compaction-threshold:67108864}") long compactionThreshold) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.store = new DelayedNotificationStore(Paths.get(storePath), compactionThreshold);
+    this.tickMillis = tickMillis;
+    this.retryDelay = retryDelay;
+    this.confirmTimeout = confirmTimeout;
+    this.wheel = new HierarchicalTimingWheel(tickMillis, System.currentTimeMillis());
+    this.scheduledCounter = Counter.builder("notification.delayed.scheduled")
+        .description("Notifications held until their send-at time")
+        .register(meterRegistry);
+    this.deliveredCounter = Counter.builder("notification.delayed.delivered")
+        .description("Delayed notifications delivered when due")
+        .register(meterRegistry);
+    Gauge.builder("notification.delayed.pending", this, scheduler -> scheduler.pending)
+        .description("Delayed notifications waiting for their send-at time")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Holds a consumed message if its send-at time is in the future.
+   *
+   * @param message the consumed message
+   * @return {@code true} if the message is held and must not be processed now
+   * @throws DelayedNotificationException if the message cannot be stored
+   */
+  public boolean defer(Message message) {
+    MessageProperties properties = message.getMessageProperties();
+    Long sendAt = parseSendAt(properties.getHeaders().get(SEND_AT_HEADER));
+    if (sendAt == null || sendAt <= System.currentTimeMillis() + tickMillis || properties.getConsumerQueue() == null) {
+      return false;
+    }
+
+    properties.getHeaders().remove(SEND_AT_HEADER);
+    DelayedNotificationStore.Position position;
+    try {
+      position = store.append(new DelayedNotification(sendAt, properties.getConsumerQueue(), message));
+    } catch (IOException e) {
+      log.warn("Failed to store delayed notification for queue {}", properties.getConsumerQueue());
+      throw new DelayedNotificationException("Failed to store delayed notification", e);
+    }
+    synchronized (this) {
+      if (position.getGeneration() == wheelGeneration) {
+        wheel.schedule(sendAt, position.getOffset());
+        pending = wheel.size();
+      }
+    }
+    scheduledCounter.increment();
+    return true;
+  }
+
+  @Override
+  public void start() {
+    HierarchicalTimingWheel replayed = new HierarchicalTimingWheel(tickMillis, System.currentTimeMillis());
+    try {
+      store.open((offset, sendAt) -> replayed.schedule(sendAt, offset));
+    } catch (IOException e) {
+      throw new DelayedNotificationException("Failed to open delayed notification store", e);
+    }
+    synchronized (this) {
+      wheel = replayed;
+      wheelGeneration = store.getGeneration();
+      pending = wheel.size();
+    }
+
+    ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "delayed-notifications");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    running = true;
+  }
+
+  /**
+   * Stops the ticker, waiting for the publisher confirms of a running tick, and
+   * closes the store.
+   */
+  @Override
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    ticker.shutdown();
+    try {
+      ticker.awaitTermination(confirmTimeout + tickMillis * 10, TimeUnit.MILLISECONDS);
+      store.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      log.warn("Failed to close delayed notification store", e);
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Returns a phase below the listener containers, so the scheduler is started
+   * before and stopped after them.
+   *
+   * @return the lifecycle phase
+   */
+  @Override
+  public int getPhase() {
+    return Integer.MAX_VALUE - 1000;
+  }
+
+  /**
+   * Runs one tick of the ticker thread. An exception thrown from a periodic
+   * task would cancel it, so none is let through.
+   */
+  private void tick() {
+    try {
+      deliverDue();
+      compactIfNeeded();
+    } catch (RuntimeException e) {
+      log.error("Delayed notification tick failed", e);
+    }
+  }
+
+  /**
+   * Delivers the notifications that are due. All of them are published before
+   * the confirms are awaited, so the confirm round trips overlap. A
+   * notification that cannot be read, published or marked as delivered, or
+   * that is not confirmed, is retried after the retry delay, without affecting
+   * the other due notifications.
+   */
+  private void deliverDue() {
+    List<Long> due = new ArrayList<>();
+    synchronized (this) {
+      wheel.advance(System.currentTimeMillis(), due::add);
+      pending = wheel.size();
+    }
+    if (due.isEmpty()) {
+      return;
+    }
+
+    List<Publish> published = new ArrayList<>(due.size());
+    for (long offset : due) {
+      try {
+        DelayedNotification notification = store.read(offset);
+        CorrelationData correlation = new CorrelationData();
+        rabbitTemplate.send(DEFAULT_EXCHANGE, notification.getQueue(), notification.getMessage(), correlation);
+        published.add(new Publish(offset, notification.getQueue(), correlation));
+      } catch (IOException | RuntimeException e) {
+        retryLater(offset, e);
+      }
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+    for (Publish publish : published) {
+      try {
+        awaitConfirm(publish, deadline);
+        store.markDelivered(publish.offset);
+        deliveredCounter.increment();
+      } catch (IOException | RuntimeException e) {
+        retryLater(publish.offset, e);
+      }
+    }
+  }
+
+  /**
+   * Waits for the publisher confirm of a published notification.
+   *
+   * @throws DelayedNotificationException if the notification was rejected or
+   *                                      returned by the broker, or was not
+   *                                      confirmed before the deadline
+   */
+  private void awaitConfirm(Publish publish, long deadline) {
+    CorrelationData.Confirm confirm;
+    try {
+      confirm = publish.correlation.getFuture().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new DelayedNotificationException("No publisher confirm for delayed notification to " + publish.queue, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DelayedNotificationException("Interrupted while waiting for publisher confirm", e);
+    }
+    if (!confirm.isAck()) {
+      throw new DelayedNotificationException(
+          "Delayed notification to " + publish.queue + " was rejected by the broker: " + confirm.getReason());
+    }
+    if (publish.correlation.getReturned() != null) {
+      throw new DelayedNotificationException("Delayed notification to " + publish.queue + " is unroutable");
+    }
+  }
+
+  private void retryLater(long offset, Exception cause) {
+    log.warn("Failed to deliver delayed notification; retrying in {} ms", retryDelay, cause);
+    synchronized (this) {
+      wheel.schedule(System.currentTimeMillis() + retryDelay, offset);
+      pending = wheel.size();
+    }
+  }
+
+  /**
+   * Compacts the store if the delivered notifications take up most of it, and
+   * rebuilds the timers with the new offsets. The timers are rebuilt from their
+   * send-at times, so a pending retry becomes due on the next tick. A failed
+   * compaction is attempted again after the retry delay.
+   */
+  private void compactIfNeeded() {
+    long now = System.currentTimeMillis();
+    if (now < compactionRetryAt || !store.needsCompaction()) {
+      return;
+    }
+    HierarchicalTimingWheel compacted = new HierarchicalTimingWheel(tickMillis, now);
+    try {
+      store.compact((offset, sendAt) -> compacted.schedule(sendAt, offset), generation -> {
+        synchronized (this) {
+          wheel = compacted;
+          wheelGeneration = generation;
+          pending = wheel.size();
+        }
+      });
+    } catch (IOException e) {
+      compactionRetryAt = now + retryDelay;
+      throw new DelayedNotificationException("Failed to compact delayed notification store", e);
+    }
+  }
+
+  private static Long parseSendAt(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    if (value != null) {
+      try {
+        return Long.parseLong(value.toString());
+      } catch (NumberFormatException e) {
+        log.warn("Ignoring invalid {} header: {}", SEND_AT_HEADER, value);
+      }
+    }
+    return null;
+  }
+
+  /** A due notification waiting for its publisher confirm. */
+  @AllArgsConstructor
+  private static class Publish {
+    private final long offset;
+    private final String queue;
+    private final CorrelationData correlation;
+  }
+}
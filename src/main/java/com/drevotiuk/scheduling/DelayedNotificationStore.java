@@ -0,0 +1,566 @@
+package com.drevotiuk.scheduling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A persistent local index of delayed notifications.
+ *
+ * <p>
+ * Notifications are appended to a log file and identified by the offset of
+ * their record. A record starts with a status byte, the send-at time and the
+ * payload length, followed by the payload with the target queue and the
+ * message. Delivered notifications are marked by overwriting the status byte,
+ * so the in-memory timers need to keep only the offset and the send-at time.
+ * The log is compacted when the store is opened, and while it is open once
+ * {@link #needsCompaction()} reports that delivered records take up most of
+ * it. Compaction moves the pending records, so their offsets change.
+ *
+ * <p>
+ * Appends are forced to disk with group commit: a thread that finds the log
+ * already forced past its record returns at once, so concurrent appends share
+ * one {@code fsync}. Compaction copies the bulk of the log without blocking
+ * appends, and holds the lock only to copy the records appended in the
+ * meantime and swap the files. Every swap starts a new generation, and
+ * {@link #append(DelayedNotification)} reports the generation its offset
+ * belongs to.
+ *
+ * <p>
+ * The message properties set by the producer are kept, except the user id,
+ * since the broker rejects a publish whose user id differs from the user of
+ * the publishing connection. Header values of type {@link String},
+ * {@link Long}, {@link Integer}, {@link Boolean}, {@link Double} and
+ * {@code byte[]} keep their type; any other header value, such as a list or a
+ * map, is stored as its string form.
+ */
+@Slf4j
+class DelayedNotificationStore implements Closeable {
+  private static final byte PENDING = 1;
+  private static final byte DELIVERED = 2;
+  private static final int RECORD_HEADER_SIZE = 1 + Long.BYTES + Integer.BYTES;
+  private static final byte PAYLOAD_VERSION = 1;
+
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+  private static final byte INTEGER_VALUE = 3;
+  private static final byte BOOLEAN_VALUE = 4;
+  private static final byte DOUBLE_VALUE = 5;
+  private static final byte BYTES_VALUE = 6;
+
+  /** The consumer of the pending notifications replayed on compaction. */
+  @FunctionalInterface
+  interface ReplayConsumer {
+    void accept(long offset, long sendAt);
+  }
+
+  /** The position of an appended notification. */
+  @AllArgsConstructor
+  @Getter
+  static class Position {
+    /** The offset identifying the notification. */
+    private final long offset;
+
+    /** The generation of the log the offset belongs to. */
+    private final long generation;
+  }
+
+  private final Path path;
+  private final long compactionThreshold;
+
+  /**
+   * The lock of forcing the log to disk. It is taken before the store monitor
+   * when both are needed.
+   */
+  private final Object syncLock = new Object();
+
+  private volatile FileChannel channel;
+  private volatile long generation;
+  private long end;
+  private long deliveredBytes;
+  private long appended;
+  private long forced;
+
+  DelayedNotificationStore(Path path) {
+    this(path, Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates the store.
+   *
+   * @param path                the path of the log file
+   * @param compactionThreshold the size of the delivered records, in bytes,
+   *                            above which the open store is compacted
+   */
+  DelayedNotificationStore(Path path, long compactionThreshold) {
+    this.path = path;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Opens the store, dropping the delivered notifications, and replays the
+   * pending ones.
+   *
+   * @param replay the consumer of the pending notifications
+   * @throws IOException if the log cannot be read or written
+   */
+  void open(ReplayConsumer replay) throws IOException {
+    synchronized (syncLock) {
+      synchronized (this) {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        if (!Files.exists(path)) {
+          channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+          forceDirectory();
+          end = 0;
+          deliveredBytes = 0;
+          return;
+        }
+
+        FileChannel target = openCompacted();
+        try {
+          Copy copy;
+          try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+            copy = copyPending(source, 0, source.size(), target, 0, replay);
+          }
+          log.info("Loaded {} pending delayed notifications; dropped {} delivered", copy.pending, copy.delivered);
+          swap(target, copy.end);
+        } catch (IOException | RuntimeException e) {
+          discard(target);
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the generation of the log, which changes whenever it is compacted.
+   *
+   * @return the generation of the log
+   */
+  long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Checks whether the open store should be compacted, which is when the
+   * delivered records exceed the compaction threshold and take up at least
+   * half of the log.
+   *
+   * @return {@code true} if the store should be compacted
+   */
+  synchronized boolean needsCompaction() {
+    return deliveredBytes >= compactionThreshold && deliveredBytes * 2 >= end;
+  }
+
+  /**
+   * Compacts the open store, dropping the delivered notifications, and replays
+   * the pending ones with their new offsets.
+   *
+   * <p>
+   * The pending records are copied to a new log while notifications are still
+   * appended to the current one. The records appended in the meantime are
+   * copied under the lock, the new log is forced to disk and moved over the
+   * current one, and {@code onSwap} is called with the new generation before
+   * the lock is released. From then on, the offsets of the previous
+   * generations are no longer valid; the notifications appended with them are
+   * among the replayed ones. If the compaction fails, the log is left as it was
+   * and the handed out offsets stay valid.
+   *
+   * <p>
+   * Notifications must not be read or marked as delivered while the store is
+   * compacted.
+   *
+   * @param replay the consumer of the pending notifications
+   * @param onSwap the consumer of the new generation, called under the lock
+   * @throws IOException if the log cannot be read or written
+   */
+  void compact(ReplayConsumer replay, LongConsumer onSwap) throws IOException {
+    FileChannel source;
+    long copiedEnd;
+    synchronized (this) {
+      source = channel;
+      copiedEnd = end;
+    }
+
+    FileChannel target = openCompacted();
+    try {
+      Copy copy = copyPending(source, 0, copiedEnd, target, 0, replay);
+      synchronized (syncLock) {
+        synchronized (this) {
+          Copy tail = copyPending(source, copiedEnd, end, target, copy.end, replay);
+          log.info("Compacted delayed notification store; kept {} pending, dropped {} delivered",
+              copy.pending + tail.pending, copy.delivered + tail.delivered);
+          source.close();
+          try {
+            swap(target, tail.end);
+          } catch (IOException | RuntimeException e) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            throw e;
+          }
+          onSwap.accept(generation);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      if (channel != target) {
+        discard(target);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Appends a notification and forces it to disk.
+   *
+   * @param notification the notification to store
+   * @return the position of the notification
+   * @throws IOException if the notification cannot be written
+   */
+  Position append(DelayedNotification notification) throws IOException {
+    byte[] payload = encode(notification);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+    record.put(PENDING).putLong(notification.getSendAt()).putInt(payload.length).put(payload).flip();
+
+    Position position;
+    long sequence;
+    synchronized (this) {
+      writeFully(channel, record, end);
+      position = new Position(end, generation);
+      end += record.limit();
+      sequence = ++appended;
+    }
+    force(sequence, position.getGeneration());
+    return position;
+  }
+
+  /**
+   * Reads a notification.
+   *
+   * @param offset the offset identifying the notification
+   * @return the notification
+   * @throws IOException if the notification cannot be read
+   */
+  synchronized DelayedNotification read(long offset) throws IOException {
+    ByteBuffer header = readFully(channel, offset, RECORD_HEADER_SIZE);
+    header.get();
+    long sendAt = header.getLong();
+    ByteBuffer payload = readFully(channel, offset + RECORD_HEADER_SIZE, header.getInt());
+    return decode(sendAt, payload.array());
+  }
+
+  /**
+   * Marks a notification as delivered.
+   *
+   * <p>
+   * The mark is not forced to disk, so a notification may be delivered again
+   * after a crash, but is never lost.
+   *
+   * @param offset the offset identifying the notification
+   * @throws IOException if the mark cannot be written
+   */
+  synchronized void markDelivered(long offset) throws IOException {
+    ByteBuffer header = readFully(channel, offset, RECORD_HEADER_SIZE);
+    channel.write(ByteBuffer.wrap(new byte[] { DELIVERED }), offset);
+    deliveredBytes += RECORD_HEADER_SIZE + header.getInt(1 + Long.BYTES);
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (syncLock) {
+      synchronized (this) {
+        if (channel != null) {
+          channel.close();
+          channel = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Forces the log to disk up to the given append, unless a concurrent force
+   * or a compaction has already done so. The appends written before the force
+   * starts are covered by it.
+   */
+  private void force(long sequence, long appendedGeneration) throws IOException {
+    synchronized (syncLock) {
+      if (forced >= sequence || generation != appendedGeneration) {
+        return;
+      }
+      long covered;
+      synchronized (this) {
+        covered = appended;
+      }
+      channel.force(false);
+      forced = covered;
+    }
+  }
+
+  private FileChannel openCompacted() throws IOException {
+    return FileChannel.open(compactedPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Makes the compacted log the current one. The compacted log is forced to
+   * disk before it is moved, and the directory after, so a crash leaves either
+   * the previous or the compacted log in place. Called with both locks held.
+   */
+  private void swap(FileChannel target, long targetEnd) throws IOException {
+    target.force(true);
+    Files.move(compactedPath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    forceDirectory();
+    channel = target;
+    end = targetEnd;
+    deliveredBytes = 0;
+    forced = appended;
+    generation++;
+  }
+
+  private void discard(FileChannel target) {
+    try {
+      target.close();
+      Files.deleteIfExists(compactedPath());
+    } catch (IOException e) {
+      log.warn("Failed to delete {}", compactedPath(), e);
+    }
+  }
+
+  private Path compactedPath() {
+    return path.resolveSibling(path.getFileName() + ".compacting");
+  }
+
+  /**
+   * Forces the directory of the log to disk, so a created or moved log file
+   * survives a crash. Directories cannot be opened on some platforms, such as
+   * Windows, where the entry is left to the file system.
+   */
+  private void forceDirectory() {
+    Path directory = path.toAbsolutePath().getParent();
+    if (directory == null) {
+      return;
+    }
+    try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      directoryChannel.force(true);
+    } catch (IOException e) {
+      log.debug("Failed to force directory {} to disk", directory, e);
+    }
+  }
+
+  /**
+   * Copies the pending records between two offsets of the source log to the
+   * target log. A truncated record at the end of the source, left by a crash
+   * during an append, is dropped.
+   */
+  private Copy copyPending(FileChannel source, long from, long to, FileChannel target, long targetEnd,
+      ReplayConsumer replay) throws IOException {
+    Copy copy = new Copy(targetEnd);
+    long offset = from;
+    while (offset < to) {
+      if (to - offset < RECORD_HEADER_SIZE) {
+        log.warn("Dropping truncated delayed notification record at the end of {}", path);
+        break;
+      }
+      ByteBuffer header = readFully(source, offset, RECORD_HEADER_SIZE);
+      byte status = header.get(0);
+      long sendAt = header.getLong(1);
+      int length = header.getInt(1 + Long.BYTES);
+      if (length < 0 || to - offset - RECORD_HEADER_SIZE < length) {
+        log.warn("Dropping truncated delayed notification record at the end of {}", path);
+        break;
+      }
+
+      long size = RECORD_HEADER_SIZE + (long) length;
+      if (status == PENDING) {
+        ByteBuffer record = readFully(source, offset, (int) size);
+        writeFully(target, record, copy.end);
+        replay.accept(copy.end, sendAt);
+        copy.end += size;
+        copy.pending++;
+      } else {
+        copy.delivered++;
+      }
+      offset += size;
+    }
+    return copy;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of delayed notification store at " + position);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static byte[] encode(DelayedNotification notification) throws IOException {
+    Message message = notification.getMessage();
+    MessageProperties properties = message.getMessageProperties();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length + 256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(PAYLOAD_VERSION);
+      out.writeUTF(notification.getQueue());
+      writeNullableUTF(out, properties.getContentType());
+      writeNullableUTF(out, properties.getContentEncoding());
+      writeNullableUTF(out, properties.getMessageId());
+      writeNullableUTF(out, properties.getCorrelationId());
+      writeNullableUTF(out, properties.getReplyTo());
+      writeNullableUTF(out, properties.getExpiration());
+      writeNullableUTF(out, properties.getType());
+      writeNullableUTF(out, properties.getAppId());
+      Date timestamp = properties.getTimestamp();
+      writeHeaderValue(out, timestamp == null ? null : timestamp.getTime());
+      writeHeaderValue(out, properties.getPriority());
+      MessageDeliveryMode deliveryMode = properties.getDeliveryMode() != null ? properties.getDeliveryMode()
+          : properties.getReceivedDeliveryMode();
+      writeHeaderValue(out, deliveryMode == null ? null : MessageDeliveryMode.toInt(deliveryMode));
+
+      Map<String, Object> headers = properties.getHeaders();
+      out.writeInt(headers.size());
+      for (Map.Entry<String, Object> header : headers.entrySet()) {
+        out.writeUTF(header.getKey());
+        writeHeaderValue(out, header.getValue());
+      }
+      out.writeInt(message.getBody().length);
+      out.write(message.getBody());
+    }
+    return bytes.toByteArray();
+  }
+
+  private static DelayedNotification decode(long sendAt, byte[] payload) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      byte version = in.readByte();
+      if (version != PAYLOAD_VERSION) {
+        throw new IOException("Unsupported delayed notification payload version " + version);
+      }
+      String queue = in.readUTF();
+      MessageProperties properties = new MessageProperties();
+      properties.setContentType(readNullableUTF(in));
+      properties.setContentEncoding(readNullableUTF(in));
+      properties.setMessageId(readNullableUTF(in));
+      properties.setCorrelationId(readNullableUTF(in));
+      properties.setReplyTo(readNullableUTF(in));
+      properties.setExpiration(readNullableUTF(in));
+      properties.setType(readNullableUTF(in));
+      properties.setAppId(readNullableUTF(in));
+      Long timestamp = (Long) readHeaderValue(in);
+      properties.setTimestamp(timestamp == null ? null : new Date(timestamp));
+      properties.setPriority((Integer) readHeaderValue(in));
+      Integer deliveryMode = (Integer) readHeaderValue(in);
+      properties.setDeliveryMode(deliveryMode == null ? null : MessageDeliveryMode.fromInt(deliveryMode));
+
+      int headerCount = in.readInt();
+      for (int i = 0; i < headerCount; i++) {
+        properties.setHeader(in.readUTF(), readHeaderValue(in));
+      }
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      return new DelayedNotification(sendAt, queue, new Message(body, properties));
+    }
+  }
+
+  private static void writeHeaderValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL_VALUE);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG_VALUE);
+      out.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER_VALUE);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN_VALUE);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE_VALUE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof byte[]) {
+      byte[] bytes = (byte[]) value;
+      out.writeByte(BYTES_VALUE);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    } else {
+      out.writeByte(STRING_VALUE);
+      out.writeUTF(value.toString());
+    }
+  }
+
+  private static Object readHeaderValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return in.readUTF();
+      case LONG_VALUE:
+        return in.readLong();
+      case INTEGER_VALUE:
+        return in.readInt();
+      case BOOLEAN_VALUE:
+        return in.readBoolean();
+      case DOUBLE_VALUE:
+        return in.readDouble();
+      case BYTES_VALUE:
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+      default:
+        throw new IOException("Unknown header value type " + type);
+    }
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /** The result of copying pending records. */
+  private static class Copy {
+    private long end;
+    private int pending;
+    private int delivered;
+
+    private Copy(long end) {
+      this.end = end;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.drevotiuk.scheduling;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A hierarchical timing wheel holding timers identified by a {@code long}
+ * handle.
+ *
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots. A slot of
+ * level {@code n} covers {@code 256^n} ticks, so the wheel spans
+ * {@code 256^4} ticks. Scheduling is O(1): the timer is pushed onto the slot
+ * of the lowest level that shares all higher-order tick bits with the current
+ * tick. When the current tick enters a slot of a higher level, the timers of
+ * that slot are cascaded to the lower levels. Timers beyond the span of the
+ * wheel wait in the top level and are re-examined on every cascade.
+ *
+ * <p>
+ * Each timer takes a single small object in an intrusive list. The wheel is
+ * not thread-safe.
+ */
+final class HierarchicalTimingWheel {
+  private static final int SLOT_BITS = 8;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private final long tickMillis;
+  private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+  private Timer overdue;
+  private long currentTick;
+  private int size;
+
+  /**
+   * Creates the wheel.
+   *
+   * @param tickMillis the duration of a tick in milliseconds
+   * @param nowMillis  the current time in milliseconds
+   */
+  HierarchicalTimingWheel(long tickMillis, long nowMillis) {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("Tick must be positive");
+    }
+    this.tickMillis = tickMillis;
+    this.currentTick = nowMillis / tickMillis;
+  }
+
+  /**
+   * Schedules a timer.
+   *
+   * @param deadlineMillis the time the timer is due, in milliseconds
+   * @param handle         the handle passed back when the timer expires
+   */
+  void schedule(long deadlineMillis, long handle) {
+    insert(new Timer(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), handle));
+    size++;
+  }
+
+  /**
+   * Advances the wheel to the given time and expires the due timers.
+   *
+   * @param nowMillis the current time in milliseconds
+   * @param expired   the consumer of the handles of expired timers
+   */
+  void advance(long nowMillis, LongConsumer expired) {
+    long targetTick = nowMillis / tickMillis;
+    expireOverdue(expired);
+    while (currentTick < targetTick) {
+      currentTick++;
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+          cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+        }
+      }
+
+      int slot = (int) (currentTick & SLOT_MASK);
+      Timer timer = slots[0][slot];
+      slots[0][slot] = null;
+      while (timer != null) {
+        Timer next = timer.next;
+        expired.accept(timer.handle);
+        size--;
+        timer = next;
+      }
+      expireOverdue(expired);
+    }
+  }
+
+  /**
+   * Returns the number of scheduled timers.
+   *
+   * @return the number of timers not expired yet
+   */
+  int size() {
+    return size;
+  }
+
+  private void insert(Timer timer) {
+    long deadline = timer.deadlineTick;
+    if (deadline <= currentTick) {
+      timer.next = overdue;
+      overdue = timer;
+      return;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = SLOT_BITS * (level + 1);
+      if ((deadline >>> shift) == (currentTick >>> shift)) {
+        push(level, (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK), timer);
+        return;
+      }
+    }
+
+    int topShift = SLOT_BITS * (LEVELS - 1);
+    push(LEVELS - 1, (int) (((currentTick >>> topShift) + 1) & SLOT_MASK), timer);
+  }
+
+  private void push(int level, int slot, Timer timer) {
+    timer.next = slots[level][slot];
+    slots[level][slot] = timer;
+  }
+
+  private void cascade(int level, int slot) {
+    Timer timer = slots[level][slot];
+    slots[level][slot] = null;
+    while (timer != null) {
+      Timer next = timer.next;
+      insert(timer);
+      timer = next;
+    }
+  }
+
+  private void expireOverdue(LongConsumer expired) {
+    while (overdue != null) {
+      Timer timer = overdue;
+      overdue = timer.next;
+      expired.accept(timer.handle);
+      size--;
+    }
+  }
+
+  /** A scheduled timer, linked into the list of its slot. */
+  private static final class Timer {
+    private final long deadlineTick;
+    private final long handle;
+    private Timer next;
+
+    private Timer(long deadlineTick, long handle) {
+      this.deadlineTick = deadlineTick;
+      this.handle = handle;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.drevotiuk.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.PreencodedMimeBodyPart;
+
+/**
+ * A static email asset kept in its base64-encoded form.
+ *
+ * <p>
+ * The encoded bytes live in a read-only off-heap buffer that is shared by all
+ * emails. Every MIME body part created by {@link #toBodyPart()} streams from a
+ * view of that buffer, so no bytes are copied or re-encoded per email.
+ */
+public class EmailAsset {
+  private static final String BASE64 = "base64";
+
+  private final String name;
+  private final String contentType;
+  private final boolean inline;
+  private final String fileName;
+  private final ByteBuffer encoded;
+
+  EmailAsset(String name, String contentType, boolean inline, String fileName, ByteBuffer encoded) {
+    this.name = name;
+    this.contentType = contentType;
+    this.inline = inline;
+    this.fileName = fileName;
+    this.encoded = encoded.asReadOnlyBuffer();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isInline() {
+    return inline;
+  }
+
+  /**
+   * Returns a read-only view of the base64-encoded bytes.
+   *
+   * @return a {@link ByteBuffer} sharing the cached bytes
+   */
+  public ByteBuffer getEncoded() {
+    return encoded.duplicate();
+  }
+
+  /**
+   * Creates a MIME body part for the asset.
+   *
+   * <p>
+   * Inline assets get the content ID {@code <name>}; attachments get the
+   * configured file name.
+   *
+   * @return a {@link MimeBodyPart} with the pre-encoded asset content
+   * @throws MessagingException if the part cannot be created
+   */
+  public MimeBodyPart toBodyPart() throws MessagingException {
+    PreencodedMimeBodyPart part = new PreencodedMimeBodyPart(BASE64);
+    part.setDataHandler(new DataHandler(new EncodedDataSource()));
+    if (inline) {
+      part.setDisposition(Part.INLINE);
+      part.setContentID("<" + name + ">");
+    } else {
+      part.setDisposition(Part.ATTACHMENT);
+      part.setFileName(fileName != null ? fileName : name);
+    }
+    return part;
+  }
+
+  /** A {@link DataSource} reading the shared encoded bytes. */
+  private class EncodedDataSource implements DataSource {
+    @Override
+    public InputStream getInputStream() {
+      return new ByteBufferInputStream(encoded.duplicate());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      throw new IOException("Email assets are read-only");
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
+  /** An {@link InputStream} over a {@link ByteBuffer}. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.drevotiuk.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import com.drevotiuk.config.EmailAssetProperties;
+import com.drevotiuk.model.exception.EmailBuildingException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A component that loads the static email assets once and keeps them in
+ * memory.
+ *
+ * <p>
+ * Every asset configured in {@link EmailAssetProperties} is read at startup,
+ * base64-encoded and stored in an off-heap buffer, so all emails reuse the
+ * same encoded bytes. Each email picks the assets it needs by name.
+ */
+@Component
+@Slf4j
+public class EmailAssetCache {
+  private final Map<String, EmailAsset> assets;
+
+  /**
+   * Loads and encodes the configured assets.
+   *
+   * @param properties     the asset configuration
+   * @param resourceLoader the loader of the asset resources
+   * @throws EmailBuildingException if an asset cannot be read
+   */
+  public EmailAssetCache(EmailAssetProperties properties, ResourceLoader resourceLoader) {
+    Map<String, EmailAsset> loaded = new LinkedHashMap<>();
+    for (Map.Entry<String, EmailAssetProperties.Asset> entry : properties.getAssets().entrySet()) {
+      loaded.put(entry.getKey(), load(entry.getKey(), entry.getValue(), resourceLoader));
+    }
+    this.assets = Collections.unmodifiableMap(loaded);
+  }
+
+  /**
+   * Returns a cached asset by name.
+   *
+   * @param name the name of the asset
+   * @return the cached asset
+   * @throws EmailBuildingException if no asset with this name is configured
+   */
+  public EmailAsset getAsset(String name) {
+    EmailAsset asset = assets.get(name);
+    if (asset == null) {
+      log.warn("Email asset {} is not configured", name);
+      throw new EmailBuildingException("Email asset is not configured: " + name);
+    }
+    return asset;
+  }
+
+  private EmailAsset load(String name, EmailAssetProperties.Asset asset, ResourceLoader resourceLoader) {
+    Resource resource = resourceLoader.getResource(asset.getPath());
+    try (InputStream in = resource.getInputStream()) {
+      byte[] encoded = Base64.getMimeEncoder().encode(StreamUtils.copyToByteArray(in));
+      ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length);
+      buffer.put(encoded).flip();
+      log.info("Loaded email asset {} ({} encoded bytes)", name, encoded.length);
+      return new EmailAsset(name, asset.getContentType(), asset.isInline(), asset.getFileName(), buffer);
+    } catch (IOException exception) {
+      log.warn("Error while loading email asset {} of path {}", name, asset.getPath());
+      throw new EmailBuildingException("Error while loading email asset " + name, exception);
+    }
+  }
+}
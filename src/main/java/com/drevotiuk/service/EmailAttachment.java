@@ -0,0 +1,24 @@
+package com.drevotiuk.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A file attached to a single email, such as an order receipt.
+ *
+ * <p>
+ * Unlike an {@link EmailAsset}, the content is specific to one email, so it is
+ * neither cached nor pre-encoded.
+ */
+@AllArgsConstructor
+@Getter
+public class EmailAttachment {
+  /** The file name shown to the recipient. */
+  private final String fileName;
+
+  /** The MIME type of the content. */
+  private final String contentType;
+
+  /** The raw content of the file. */
+  private final byte[] content;
+}
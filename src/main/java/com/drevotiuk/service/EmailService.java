@@ -1,13 +1,20 @@
 package com.drevotiuk.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
 
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.drevotiuk.model.exception.EmailBuildingException;
 import com.drevotiuk.model.exception.EmailSendingException;
+import com.drevotiuk.tracing.NotificationTrace;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,8 +23,12 @@ import lombok.extern.slf4j.Slf4j;
  * A service class responsible for building and sending emails.
  * 
  * <p>
- * This class uses {@link JavaMailSender} to send emails asynchronously.
- * It also builds email content using templates stored in resources.
+ * This class uses {@link JavaMailSender} to send emails on the calling
+ * thread, so a failed send fails the listener invocation and the message is
+ * returned to the broker. It also builds email content using templates stored
+ * in resources, and adds the static assets from {@link EmailAssetCache} that
+ * an email asks for as inline parts or attachments, along with the
+ * attachments specific to the email.
  */
 @Service
 @RequiredArgsConstructor
@@ -26,26 +37,59 @@ public class EmailService {
   private static final String CHARSET = "utf-8";
 
   private final JavaMailSender mailSender;
+  private final EmailAssetCache assetCache;
 
   /**
-   * Sends an email asynchronously.
+   * Sends an email.
    * 
    * @param to      the recipient's email address
    * @param subject the subject of the email
    * @param email   the email content
    * @throws EmailSendingException if an error occurs while sending the email
    */
-  @Async
   public void send(String from, String to, String subject, String email) {
+    send(from, to, subject, email, Collections.emptyList(), Collections.emptyList());
+  }
+
+  /**
+   * Sends an email with static assets and attachments.
+   * 
+   * @param to          the recipient's email address
+   * @param subject     the subject of the email
+   * @param email       the email content
+   * @param assetNames  the names of the cached assets to add, such as the
+   *                    images the template references as {@code cid:<name>}
+   * @param attachments the files attached to this email only
+   * @throws EmailBuildingException if an asset is not configured
+   * @throws EmailSendingException  if an error occurs while sending the email
+   */
+  public void send(String from, String to, String subject, String email, List<String> assetNames,
+      List<EmailAttachment> attachments) {
+    List<EmailAsset> assets = new ArrayList<>(assetNames.size());
+    for (String name : assetNames) {
+      assets.add(assetCache.getAsset(name));
+    }
+
     try {
       MimeMessage mimeMessage = mailSender.createMimeMessage();
-      MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, CHARSET);
+      boolean multipart = !assets.isEmpty() || !attachments.isEmpty();
+      MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, multipart, CHARSET);
       helper.setText(email, true);
+      for (EmailAsset asset : assets) {
+        MimeMultipart parts = asset.isInline() ? helper.getMimeMultipart() : helper.getRootMimeMultipart();
+        parts.addBodyPart(asset.toBodyPart());
+      }
+      for (EmailAttachment attachment : attachments) {
+        helper.addAttachment(attachment.getFileName(), new ByteArrayResource(attachment.getContent()),
+            attachment.getContentType());
+      }
       helper.setTo(to);
       helper.setSubject(subject);
       helper.setFrom(from);
       log.info("Sending email to {} with subject \"{}\"", to, subject);
-      mailSender.send(mimeMessage);
+      try (NotificationTrace.Span span = NotificationTrace.span("smtp.send")) {
+        mailSender.send(mimeMessage);
+      }
     } catch (Exception e) {
       log.warn("Failed to send email");
       throw new EmailSendingException("Failed to send email", e);
@@ -0,0 +1,152 @@
+package com.drevotiuk.service;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.drevotiuk.resilience.CancellableSleeper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A component that coordinates the shutdown of notification processing.
+ *
+ * <p>
+ * It is stopped before any other lifecycle bean and stops all RabbitMQ
+ * listener containers concurrently, so every container cancels its consumers
+ * right away and the drain is bounded by a single shutdown timeout rather than
+ * one timeout per container. Emails are rendered and sent on the listener
+ * thread, and a delivery is acknowledged only after the send completes, so each
+ * container waits for its in-flight notifications until the shutdown timeout
+ * expires. Listener threads waiting in a user service retry back-off are woken
+ * up and give up retrying, so their deliveries are returned to the broker
+ * without being processed again.
+ *
+ * <p>
+ * Deliveries of the notifications that are still running at that point are
+ * left unacknowledged and returned to the broker when the channel is closed.
+ * Their listener threads are not interrupted and may still complete the SMTP
+ * send, so these notifications may be delivered twice.
+ *
+ * <p>
+ * The drain duration and the number of notifications still running after the
+ * shutdown timeout are published as metrics.
+ */
+@Component
+@Slf4j
+public class GracefulShutdownCoordinator implements SmartLifecycle {
+  private static final long STOP_GRACE_PERIOD = 1000;
+
+  private final RabbitListenerEndpointRegistry listenerRegistry;
+  private final InFlightListenerAdvice inFlightAdvice;
+  private final CancellableSleeper retrySleeper;
+  private final long shutdownTimeout;
+
+  private final Timer drainTimer;
+  private final Counter unfinishedCounter;
+
+  private volatile boolean running;
+
+  public GracefulShutdownCoordinator(RabbitListenerEndpointRegistry listenerRegistry,
+      InFlightListenerAdvice inFlightAdvice, CancellableSleeper retrySleeper, MeterRegistry meterRegistry,
+      @Value("${rabbitmq.listener.shutdown-timeout:10000}") long shutdownTimeout) {
+    this.listenerRegistry = listenerRegistry;
+    this.inFlightAdvice = inFlightAdvice;
+    this.retrySleeper = retrySleeper;
+    this.shutdownTimeout = shutdownTimeout;
+    this.drainTimer = Timer.builder("notification.shutdown.drain")
+        .description("Time spent draining in-flight notifications on shutdown")
+        .register(meterRegistry);
+    this.unfinishedCounter = Counter.builder("notification.shutdown.unfinished")
+        .description("Notifications still running when the shutdown timeout expired; "
+            + "they are returned to the broker and may be sent twice")
+        .register(meterRegistry);
+    Gauge.builder("notification.listener.in-flight", inFlightAdvice, InFlightListenerAdvice::getInFlight)
+        .description("Notifications being processed by the listeners")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void start() {
+    retrySleeper.resume();
+    running = true;
+  }
+
+  /**
+   * Drains in-flight notifications.
+   *
+   * <p>
+   * Blocks until the listener containers are stopped, but no longer than the
+   * shutdown timeout plus a short grace period for closing the channels.
+   */
+  @Override
+  public void stop() {
+    long startedAt = System.nanoTime();
+    log.info("Stopping notification listeners with {} notifications in flight", inFlightAdvice.getInFlight());
+    retrySleeper.cancel();
+    stopContainers(listenerRegistry.getListenerContainers());
+
+    int unfinished = inFlightAdvice.getInFlight();
+    if (unfinished > 0) {
+      unfinishedCounter.increment(unfinished);
+      log.warn("Shutdown timeout expired; {} in-flight notifications are returned to the broker "
+          + "and may be sent twice", unfinished);
+    }
+
+    drainTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    running = false;
+  }
+
+  /**
+   * Stops the containers on separate threads, since stopping a container blocks
+   * until its in-flight invocations complete or its shutdown timeout expires.
+   */
+  private void stopContainers(Collection<MessageListenerContainer> containers) {
+    CountDownLatch stopped = new CountDownLatch(containers.size());
+    for (MessageListenerContainer container : containers) {
+      Thread thread = new Thread(() -> {
+        try {
+          container.stop();
+        } finally {
+          stopped.countDown();
+        }
+      }, "listener-shutdown");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    try {
+      if (!stopped.await(shutdownTimeout + STOP_GRACE_PERIOD, TimeUnit.MILLISECONDS)) {
+        log.warn("{} listener containers did not stop within the shutdown timeout", stopped.getCount());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Returns the highest phase, so the coordinator is stopped before the
+   * listener containers.
+   *
+   * @return {@link Integer#MAX_VALUE}
+   */
+  @Override
+  public int getPhase() {
+    return Integer.MAX_VALUE;
+  }
+}
@@ -0,0 +1,38 @@
+package com.drevotiuk.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * A listener container advice that counts the listener invocations in flight.
+ *
+ * <p>
+ * An invocation covers the whole processing of a notification, including the
+ * SMTP send, and its delivery is acknowledged only after it returns. The
+ * {@link GracefulShutdownCoordinator} uses the count to report the invocations
+ * that did not complete before the shutdown timeout.
+ */
+public class InFlightListenerAdvice implements MethodInterceptor {
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    inFlight.incrementAndGet();
+    try {
+      return invocation.proceed();
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the number of listener invocations in flight.
+   *
+   * @return the number of running listener invocations
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
@@ -4,9 +4,14 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Collections;
 
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
@@ -15,8 +20,10 @@ import org.springframework.stereotype.Service;
 import com.drevotiuk.model.UserView;
 import com.drevotiuk.model.exception.EmailBuildingException;
 import com.drevotiuk.model.exception.UserNotFoundException;
+import com.drevotiuk.model.exception.UserServiceUnavailableException;
 import com.drevotiuk.model.EmailVerificationDetails;
 import com.drevotiuk.model.OrderEmailDetails;
+import com.drevotiuk.tracing.NotificationTrace;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -25,6 +32,14 @@ import lombok.extern.slf4j.Slf4j;
  * A service class responsible for consuming messages from RabbitMQ queues
  * and processing them to send notifications via email.
  * It then builds the appropriate email content and sends it.
+ * 
+ * <p>
+ * The consumed queues are resolved by
+ * {@link com.drevotiuk.config.ShardAssignment}, so an instance consumes either
+ * the shared queues or the shard queues it claims. Each template is sent with
+ * the cached assets listed for it in {@code resources.email.verification-assets}
+ * and {@code resources.email.order-created-assets}, none by default; an inline
+ * asset is shown only where the template references it as {@code cid:<name>}.
  */
 @Service
 @RequiredArgsConstructor
@@ -51,9 +66,15 @@ public class NotificationConsumer {
   @Value("${rabbitmq.routingkey.user}")
   private String userRoutingKey;
 
+  @Value("${resources.email.verification-assets:}")
+  private String[] verificationEmailAssets;
+  @Value("${resources.email.order-created-assets:}")
+  private String[] orderCreatedEmailAssets;
+
   private final EmailService emailService;
   private final RabbitTemplate rabbitTemplate;
   private final ResourceLoader resourceLoader;
+  private final UserLookupGuard userLookupGuard;
 
   /**
    * Consumes messages from the email verification queue and processes them
@@ -61,11 +82,12 @@ public class NotificationConsumer {
    * 
    * @param details the details for the email verification
    */
-  @RabbitListener(queues = "${rabbitmq.queue.email-verification}")
+  @RabbitListener(queues = "#{@shardAssignment.emailVerificationQueues}")
   public void consumeEmailVerification(EmailVerificationDetails details) {
     log.info("Received email verification message; email: {}", details.getEmail());
     String email = buildVerificationEmail(details.getFirstName(), details.getLink());
-    emailService.send(from, details.getEmail(), verificationEmailTopic, email);
+    emailService.send(from, details.getEmail(), verificationEmailTopic, email,
+        Arrays.asList(verificationEmailAssets), Collections.emptyList());
   }
 
   /**
@@ -74,26 +96,40 @@ public class NotificationConsumer {
    * 
    * @param details the details for the order creation
    */
-  @RabbitListener(queues = "${rabbitmq.queue.order-created}")
+  @RabbitListener(queues = "#{@shardAssignment.orderQueues}")
   public void consumeOrderCreated(OrderEmailDetails details) {
     String userId = details.getUserId();
     log.info("Received order created message; userID: {}", userId);
     UserView user = getUserById(userId);
     String emailContent = buildOrderCreatedEmail(
         user.getFirstName(), details.getOrderTime(), details.getTotalPrice());
-    emailService.send(from, user.getEmail(), orderCreatedTopic, emailContent);
+    emailService.send(from, user.getEmail(), orderCreatedTopic, emailContent,
+        Arrays.asList(orderCreatedEmailAssets), Collections.emptyList());
   }
 
   /**
    * Retrieves user details by sending a request to the user service via RabbitMQ.
    * 
+   * <p>
+   * The request goes through the {@link UserLookupGuard}, so it is rejected
+   * without reaching the user service when that service is overloaded. The
+   * reply is converted outside the guard, so an unknown user or a malformed
+   * reply does not count as a failure of the user service.
+   * 
    * @param userId the ID of the user to retrieve
    * @return a {@link UserView}
+   * @throws UserServiceUnavailableException if the user service cannot take the
+   *                                         request at the moment
    */
   private UserView getUserById(String userId) {
-    Object message = rabbitTemplate.convertSendAndReceive(userServiceExchange, userRoutingKey, userId);
+    MessageConverter converter = rabbitTemplate.getMessageConverter();
+    Message request = converter.toMessage(userId, new MessageProperties());
+    Message reply;
+    try (NotificationTrace.Span span = NotificationTrace.span("user-service.rpc")) {
+      reply = userLookupGuard.call(() -> rabbitTemplate.sendAndReceive(userServiceExchange, userRoutingKey, request));
+    }
 
-    return validateAndCastUser(message, userId);
+    return validateAndCastUser(reply == null ? null : converter.fromMessage(reply), userId);
   }
 
   /**
@@ -122,7 +158,9 @@ public class NotificationConsumer {
    * @return the formatted verification email content
    */
   public String buildVerificationEmail(String name, String link) {
-    return MessageFormat.format(getEmail(verificationEmailResourcePath), name, link, tokenExpiration);
+    try (NotificationTrace.Span span = NotificationTrace.span("render")) {
+      return MessageFormat.format(getEmail(verificationEmailResourcePath), name, link, tokenExpiration);
+    }
   }
 
   /**
@@ -134,7 +172,9 @@ public class NotificationConsumer {
    * @return the formatted order-created email content
    */
   public String buildOrderCreatedEmail(String name, String date, BigDecimal totalPrice) {
-    return MessageFormat.format(getEmail(orderCreatedResourcePath), name, date, totalPrice);
+    try (NotificationTrace.Span span = NotificationTrace.span("render")) {
+      return MessageFormat.format(getEmail(orderCreatedResourcePath), name, date, totalPrice);
+    }
   }
 
   /**
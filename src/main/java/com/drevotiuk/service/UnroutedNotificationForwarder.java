@@ -0,0 +1,67 @@
+package com.drevotiuk.service;
+
+import java.util.Map;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A listener that recovers notifications the consistent-hash exchanges could
+ * not route.
+ *
+ * <p>
+ * A notification published without the hash header cannot be placed on a
+ * shard, so the broker hands it to the alternate exchange of the
+ * consistent-hash exchange, which routes it to an unrouted queue. Each such
+ * notification is logged, counted and forwarded to the first shard of its
+ * type, so the email is still sent. Its ordering relative to the other
+ * notifications of the user is not guaranteed. A growing
+ * {@code notification.sharding.unrouted} count points to a producer that does
+ * not set the hash header.
+ */
+@Slf4j
+public class UnroutedNotificationForwarder implements MessageListener {
+  private static final String DEFAULT_EXCHANGE = "";
+
+  private final RabbitTemplate rabbitTemplate;
+  private final Map<String, String> fallbackQueues;
+  private final String hashHeader;
+  private final Counter unroutedCounter;
+
+  /**
+   * Creates the forwarder.
+   *
+   * @param rabbitTemplate the template used to forward notifications
+   * @param fallbackQueues the shard queue to forward to, by unrouted queue
+   * @param hashHeader     the name of the hash header
+   * @param meterRegistry  the registry of the unrouted notification counter
+   */
+  public UnroutedNotificationForwarder(RabbitTemplate rabbitTemplate, Map<String, String> fallbackQueues,
+      String hashHeader, MeterRegistry meterRegistry) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.fallbackQueues = fallbackQueues;
+    this.hashHeader = hashHeader;
+    this.unroutedCounter = Counter.builder("notification.sharding.unrouted")
+        .description("Notifications without the hash header, forwarded to the first shard")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void onMessage(Message message) {
+    String queue = message.getMessageProperties().getConsumerQueue();
+    String fallbackQueue = fallbackQueues.get(queue);
+    if (fallbackQueue == null) {
+      throw new IllegalStateException("No fallback shard queue for " + queue);
+    }
+
+    log.warn("Notification without the {} header reached {} (routing key {}); forwarding it to {}",
+        hashHeader, queue, message.getMessageProperties().getReceivedRoutingKey(), fallbackQueue);
+    unroutedCounter.increment();
+    rabbitTemplate.send(DEFAULT_EXCHANGE, fallbackQueue, message);
+  }
+}
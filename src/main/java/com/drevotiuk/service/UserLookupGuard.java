@@ -0,0 +1,128 @@
+package com.drevotiuk.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+
+import com.drevotiuk.model.exception.UserServiceUnavailableException;
+import com.drevotiuk.resilience.AdaptiveConcurrencyLimiter;
+import com.drevotiuk.resilience.CircuitBreaker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A component that protects the user service from being overloaded by user
+ * lookups.
+ *
+ * <p>
+ * Every lookup passes through a {@link CircuitBreaker} and an
+ * {@link AdaptiveConcurrencyLimiter}. Lookups are rejected while the breaker is
+ * open or the concurrency limit is reached; rejections, failures and timeouts
+ * are fed back to the breaker. A rejected lookup fails the listener
+ * invocation, which is then retried with back-off by the
+ * {@code userServiceRetryAdvice} instead of being requeued immediately. The
+ * current limit, the in-flight lookups, the round-trip time and the rejections
+ * are published as metrics.
+ */
+@Component
+@Slf4j
+public class UserLookupGuard {
+  private final AdaptiveConcurrencyLimiter limiter;
+  private final CircuitBreaker circuitBreaker;
+
+  private final Timer rttTimer;
+  private final Counter limitRejections;
+  private final Counter circuitRejections;
+
+  public UserLookupGuard(AdaptiveConcurrencyLimiter limiter, CircuitBreaker circuitBreaker,
+      MeterRegistry meterRegistry) {
+    this.limiter = limiter;
+    this.circuitBreaker = circuitBreaker;
+    this.rttTimer = Timer.builder("notification.user-service.rtt")
+        .description("Round-trip time of user lookups")
+        .register(meterRegistry);
+    this.limitRejections = rejectionCounter(meterRegistry, "limit");
+    this.circuitRejections = rejectionCounter(meterRegistry, "circuit-open");
+    Gauge.builder("notification.user-service.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+        .description("Current concurrency limit of user lookups")
+        .register(meterRegistry);
+    Gauge.builder("notification.user-service.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+        .description("User lookups in flight")
+        .register(meterRegistry);
+    Gauge.builder("notification.user-service.circuit-open", circuitBreaker,
+        breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+        .description("Whether the user service circuit breaker is open")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Performs a user lookup if the user service can take it.
+   *
+   * <p>
+   * A {@code null} result is the reply timeout of the RPC and is treated as a
+   * dropped call. The lookup should return the raw reply and leave its
+   * conversion to the caller, so that an unknown user or a malformed reply is
+   * not fed back to the limiter and the breaker as a failure. A conversion
+   * error thrown by the lookup itself means that the user service replied, so
+   * it is recorded as a completed call.
+   *
+   * @param <T>    the lookup result type
+   * @param lookup the lookup to perform
+   * @return the lookup result, or {@code null} if no reply was received
+   * @throws UserServiceUnavailableException if the circuit breaker is open or
+   *                                         the concurrency limit is reached
+   */
+  public <T> T call(Supplier<T> lookup) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      circuitRejections.increment();
+      throw new UserServiceUnavailableException("User service circuit breaker is open");
+    }
+    if (!limiter.tryAcquire()) {
+      limitRejections.increment();
+      circuitBreaker.onFailure();
+      log.warn("User lookup rejected; concurrency limit {} reached", limiter.getLimit());
+      throw new UserServiceUnavailableException("User service concurrency limit reached");
+    }
+
+    long startedAt = System.nanoTime();
+    T result;
+    try {
+      result = lookup.get();
+    } catch (MessageConversionException e) {
+      onReply(System.nanoTime() - startedAt);
+      throw e;
+    } catch (RuntimeException e) {
+      limiter.onDropped();
+      circuitBreaker.onFailure();
+      throw e;
+    }
+
+    if (result == null) {
+      rttTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+      limiter.onDropped();
+      circuitBreaker.onFailure();
+    } else {
+      onReply(System.nanoTime() - startedAt);
+    }
+    return result;
+  }
+
+  private void onReply(long rtt) {
+    rttTimer.record(rtt, TimeUnit.NANOSECONDS);
+    limiter.onSuccess(rtt);
+    circuitBreaker.onSuccess();
+  }
+
+  private static Counter rejectionCounter(MeterRegistry meterRegistry, String reason) {
+    return Counter.builder("notification.user-service.rejections")
+        .description("User lookups rejected before reaching the user service")
+        .tag("reason", reason)
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,158 @@
+package com.drevotiuk.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.drevotiuk.tracing.TraceRecord.SpanRecord;
+
+/**
+ * The trace of a single notification.
+ *
+ * <p>
+ * The trace is bound to the listener thread while the notification is
+ * handled, including the email send. It completes when the listener returns,
+ * and is then handed to the completion callback.
+ *
+ * <p>
+ * Code on the processing path times its steps with {@link #span(String)},
+ * which does nothing when no trace is bound.
+ */
+public final class NotificationTrace {
+  private static final ThreadLocal<NotificationTrace> CURRENT = new ThreadLocal<>();
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private final String name;
+  private final TraceContext context;
+  private final Instant startedAt = Instant.now();
+  private final long startNanos = System.nanoTime();
+  private final List<SpanRecord> spans = new ArrayList<>();
+  private final AtomicBoolean completed = new AtomicBoolean();
+  private final Consumer<NotificationTrace> onComplete;
+
+  private volatile long durationNanos;
+
+  /**
+   * Starts a trace held by the caller.
+   *
+   * @param name       the name of the notification
+   * @param context    the trace context of the notification
+   * @param onComplete the callback invoked once the trace completes
+   */
+  public NotificationTrace(String name, TraceContext context, Consumer<NotificationTrace> onComplete) {
+    this.name = name;
+    this.context = context;
+    this.onComplete = onComplete;
+  }
+
+  /**
+   * Returns the trace bound to the current thread.
+   *
+   * @return the current trace, or {@code null} if none is bound
+   */
+  public static NotificationTrace current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Starts a span in the trace bound to the current thread.
+   *
+   * @param name the name of the span
+   * @return the started span, to be closed when the step is done
+   */
+  public static Span span(String name) {
+    NotificationTrace trace = CURRENT.get();
+    return new Span(trace, name, trace == null ? 0 : System.nanoTime());
+  }
+
+  /**
+   * Binds the trace to the current thread.
+   *
+   * @return the previously bound trace, to be passed to {@link #restore}
+   */
+  public NotificationTrace attach() {
+    NotificationTrace previous = CURRENT.get();
+    CURRENT.set(this);
+    return previous;
+  }
+
+  /**
+   * Restores the trace that was bound before {@link #attach()}.
+   *
+   * @param previous the previously bound trace, may be {@code null}
+   */
+  public static void restore(NotificationTrace previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /** Completes the trace. Later calls do nothing. */
+  public void complete() {
+    if (completed.compareAndSet(false, true)) {
+      durationNanos = System.nanoTime() - startNanos;
+      onComplete.accept(this);
+    }
+  }
+
+  public TraceContext getContext() {
+    return context;
+  }
+
+  /**
+   * Returns the total processing time.
+   *
+   * @return the duration in nanoseconds, or {@code 0} if the trace has not
+   *         completed
+   */
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * Creates a snapshot of the completed trace.
+   *
+   * @return the {@link TraceRecord} of the trace
+   */
+  public TraceRecord toRecord() {
+    List<SpanRecord> snapshot;
+    synchronized (spans) {
+      snapshot = new ArrayList<>(spans);
+    }
+    return new TraceRecord(context.getTraceId(), name, startedAt, durationNanos / NANOS_PER_MILLI, snapshot);
+  }
+
+  private void addSpan(String spanName, long spanStartNanos, long spanEndNanos) {
+    SpanRecord span = new SpanRecord(spanName, (spanStartNanos - startNanos) / NANOS_PER_MILLI,
+        (spanEndNanos - spanStartNanos) / NANOS_PER_MILLI, Thread.currentThread().getName());
+    synchronized (spans) {
+      spans.add(span);
+    }
+  }
+
+  /**
+   * A timed step of a notification. Closing the span records it in its trace.
+   */
+  public static final class Span implements AutoCloseable {
+    private final NotificationTrace trace;
+    private final String name;
+    private final long startNanos;
+
+    private Span(NotificationTrace trace, String name, long startNanos) {
+      this.trace = trace;
+      this.name = name;
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public void close() {
+      if (trace != null) {
+        trace.addSpan(name, startNanos, System.nanoTime());
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.drevotiuk.tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * A tail-sampling recorder of notification traces.
+ *
+ * <p>
+ * The recorder keeps the durations of the most recent notifications in a
+ * sliding window and periodically derives the duration threshold of the
+ * slowest fraction of them. Only the traces at or above the threshold are
+ * snapshotted, into a fixed-size ring buffer that overwrites the oldest
+ * entries. A trace is compared with the threshold derived before it. The
+ * first threshold is derived from a minimum sample of a tenth of the window,
+ * so slow notifications are kept soon after startup even at low volume, and
+ * the threshold tightens as the window fills. No trace is kept before that.
+ */
+@Component
+public class SlowNotificationRecorder {
+  private final double slowFraction;
+  private final long[] window;
+  private final int recomputeInterval;
+  private final TraceRecord[] ring;
+
+  private int windowIndex;
+  private int windowSize;
+  private int sinceRecompute;
+  private long thresholdNanos;
+  private boolean calibrated;
+  private int ringIndex;
+  private int ringSize;
+
+  /**
+   * Creates the recorder.
+   *
+   * @param slowPercent the percentage of the slowest notifications to keep
+   * @param windowSize  the number of recent durations the threshold is derived
+   *                    from
+   * @param capacity    the number of traces kept
+   */
+  public SlowNotificationRecorder(@Value("${notifications.tracing.slow-percent:1}") double slowPercent,
+      @Value("${notifications.tracing.window-size:1000}") int windowSize,
+      @Value("${notifications.tracing.capacity:256}") int capacity) {
+    if (slowPercent <= 0 || slowPercent > 100) {
+      throw new IllegalArgumentException("Slow percentage must be in (0, 100]");
+    }
+    if (windowSize < 1 || capacity < 1) {
+      throw new IllegalArgumentException("Window size and capacity must be positive");
+    }
+    this.slowFraction = slowPercent / 100;
+    this.window = new long[windowSize];
+    this.recomputeInterval = Math.max(1, windowSize / 10);
+    this.ring = new TraceRecord[capacity];
+  }
+
+  /**
+   * Records a completed trace, keeping its snapshot if it is among the slowest.
+   *
+   * @param trace the completed trace
+   */
+  public void record(NotificationTrace trace) {
+    long duration = trace.getDurationNanos();
+    boolean slow;
+    synchronized (this) {
+      slow = calibrated && duration >= thresholdNanos;
+      window[windowIndex] = duration;
+      windowIndex = (windowIndex + 1) % window.length;
+      windowSize = Math.min(windowSize + 1, window.length);
+      sinceRecompute++;
+      if (sinceRecompute >= recomputeInterval) {
+        recomputeThreshold();
+      }
+    }
+    if (!slow) {
+      return;
+    }
+
+    TraceRecord record = trace.toRecord();
+    synchronized (this) {
+      ring[ringIndex] = record;
+      ringIndex = (ringIndex + 1) % ring.length;
+      ringSize = Math.min(ringSize + 1, ring.length);
+    }
+  }
+
+  /**
+   * Returns the kept traces, slowest first.
+   *
+   * @return the snapshots of the slowest notifications
+   */
+  public List<TraceRecord> getSlowNotifications() {
+    List<TraceRecord> records;
+    synchronized (this) {
+      records = new ArrayList<>(Arrays.asList(ring).subList(0, ringSize));
+    }
+    records.sort(Comparator.comparingDouble(TraceRecord::getDurationMillis).reversed());
+    return records;
+  }
+
+  public synchronized long getThresholdNanos() {
+    return thresholdNanos;
+  }
+
+  private void recomputeThreshold() {
+    sinceRecompute = 0;
+    long[] sorted = Arrays.copyOf(window, windowSize);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(sorted.length * (1 - slowFraction));
+    thresholdNanos = sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    calibrated = true;
+  }
+}
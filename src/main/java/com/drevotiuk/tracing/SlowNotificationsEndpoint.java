@@ -0,0 +1,30 @@
+package com.drevotiuk.tracing;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * An actuator endpoint exposing the timing breakdowns of the slowest
+ * notifications kept by the {@link SlowNotificationRecorder}.
+ */
+@Component
+@Endpoint(id = "slownotifications")
+@RequiredArgsConstructor
+public class SlowNotificationsEndpoint {
+  private final SlowNotificationRecorder recorder;
+
+  /**
+   * Returns the slowest recent notifications.
+   *
+   * @return the kept traces, slowest first
+   */
+  @ReadOperation
+  public List<TraceRecord> slowNotifications() {
+    return recorder.getSlowNotifications();
+  }
+}
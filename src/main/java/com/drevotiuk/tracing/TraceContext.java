@@ -0,0 +1,96 @@
+package com.drevotiuk.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * The identifiers of a trace, carried between services in the W3C
+ * {@code traceparent} header.
+ */
+public final class TraceContext {
+  /** The name of the header carrying the trace context. */
+  public static final String TRACEPARENT_HEADER = "traceparent";
+
+  private static final Pattern TRACEPARENT = Pattern.compile("00-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}");
+  private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+  private static final String SAMPLED = "01";
+
+  private final String traceId;
+  private final String spanId;
+  private final String flags;
+
+  private TraceContext(String traceId, String spanId, String flags) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.flags = flags;
+  }
+
+  /**
+   * Parses a {@code traceparent} header value.
+   *
+   * @param traceparent the header value, may be {@code null}
+   * @return the parsed context, or {@code null} if the value is missing or
+   *         invalid
+   */
+  public static TraceContext parse(String traceparent) {
+    if (traceparent == null || !TRACEPARENT.matcher(traceparent).matches()) {
+      return null;
+    }
+    String traceId = traceparent.substring(3, 35);
+    String spanId = traceparent.substring(36, 52);
+    if (INVALID_TRACE_ID.equals(traceId) || INVALID_SPAN_ID.equals(spanId)) {
+      return null;
+    }
+    return new TraceContext(traceId, spanId, traceparent.substring(53));
+  }
+
+  /**
+   * Starts a new trace.
+   *
+   * @return a context with a new trace ID
+   */
+  public static TraceContext newRoot() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new TraceContext(hex(random.nextLong()) + hex(random.nextLong()), newSpanId(), SAMPLED);
+  }
+
+  /**
+   * Creates the context of a child span in the same trace.
+   *
+   * @return a context with the same trace ID and a new span ID
+   */
+  public TraceContext child() {
+    return new TraceContext(traceId, newSpanId(), flags);
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * Formats the context as a {@code traceparent} header value.
+   *
+   * @return the header value
+   */
+  public String toTraceparent() {
+    return "00-" + traceId + "-" + spanId + "-" + flags;
+  }
+
+  private static String newSpanId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return hex(id);
+  }
+
+  private static String hex(long value) {
+    String hex = Long.toHexString(value);
+    return INVALID_SPAN_ID.substring(hex.length()) + hex;
+  }
+}
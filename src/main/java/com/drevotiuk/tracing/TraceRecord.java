@@ -0,0 +1,48 @@
+package com.drevotiuk.tracing;
+
+import java.time.Instant;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A completed notification trace with its timing breakdown.
+ */
+@AllArgsConstructor
+@Getter
+public class TraceRecord {
+  /** The ID of the trace. */
+  private String traceId;
+
+  /** The name of the traced notification, usually the consumed queue. */
+  private String name;
+
+  /** The time when the notification was received. */
+  private Instant startedAt;
+
+  /** The total processing time in milliseconds, including the SMTP send. */
+  private double durationMillis;
+
+  /** The spans recorded while processing the notification. */
+  private List<SpanRecord> spans;
+
+  /**
+   * A single timed step of a notification.
+   */
+  @AllArgsConstructor
+  @Getter
+  public static class SpanRecord {
+    /** The name of the step. */
+    private String name;
+
+    /** The start of the step in milliseconds since the notification start. */
+    private double offsetMillis;
+
+    /** The duration of the step in milliseconds. */
+    private double durationMillis;
+
+    /** The thread that ran the step. */
+    private String thread;
+  }
+}
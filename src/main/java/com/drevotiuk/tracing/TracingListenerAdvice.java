@@ -0,0 +1,52 @@
+package com.drevotiuk.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * A listener container advice that traces every consumed notification.
+ *
+ * <p>
+ * The trace context is taken from the {@code traceparent} header of the
+ * message, or a new trace is started. The trace is bound to the listener
+ * thread, its ID is put in the logging MDC, and it is completed when the
+ * listener returns. Completed traces go to the
+ * {@link SlowNotificationRecorder}.
+ */
+public class TracingListenerAdvice implements MethodInterceptor {
+  /** The MDC key of the trace ID. */
+  public static final String TRACE_ID_MDC_KEY = "traceId";
+
+  private final SlowNotificationRecorder recorder;
+
+  public TracingListenerAdvice(SlowNotificationRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (arguments.length < 2 || !(arguments[1] instanceof Message)) {
+      return invocation.proceed();
+    }
+
+    MessageProperties properties = ((Message) arguments[1]).getMessageProperties();
+    Object traceparent = properties.getHeaders().get(TraceContext.TRACEPARENT_HEADER);
+    TraceContext parent = TraceContext.parse(traceparent == null ? null : traceparent.toString());
+    TraceContext context = parent == null ? TraceContext.newRoot() : parent.child();
+
+    NotificationTrace trace = new NotificationTrace(properties.getConsumerQueue(), context, recorder::record);
+    NotificationTrace previous = trace.attach();
+    MDC.put(TRACE_ID_MDC_KEY, context.getTraceId());
+    try {
+      return invocation.proceed();
+    } finally {
+      MDC.remove(TRACE_ID_MDC_KEY);
+      NotificationTrace.restore(previous);
+      trace.complete();
+    }
+  }
+}
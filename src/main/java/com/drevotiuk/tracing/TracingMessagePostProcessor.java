@@ -0,0 +1,20 @@
+package com.drevotiuk.tracing;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+
+/**
+ * A {@link MessagePostProcessor} that propagates the current notification
+ * trace on outgoing messages in the {@code traceparent} header.
+ */
+public class TracingMessagePostProcessor implements MessagePostProcessor {
+  @Override
+  public Message postProcessMessage(Message message) {
+    NotificationTrace trace = NotificationTrace.current();
+    if (trace != null) {
+      message.getMessageProperties()
+          .setHeader(TraceContext.TRACEPARENT_HEADER, trace.getContext().child().toTraceparent());
+    }
+    return message;
+  }
+}
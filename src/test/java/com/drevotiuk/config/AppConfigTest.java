@@ -0,0 +1,115 @@
+package com.drevotiuk.config;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.support.ContainerUtils;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+
+import com.drevotiuk.model.exception.UserServiceUnavailableException;
+import com.drevotiuk.resilience.CancellableSleeper;
+import com.rabbitmq.client.Channel;
+
+@ExtendWith(MockitoExtension.class)
+public class AppConfigTest {
+  @Mock
+  private ProxyMethodInvocation invocation;
+  @Mock
+  private Channel channel;
+  private Message message;
+  private CancellableSleeper retrySleeper;
+  private ExecutorService listenerThread;
+  private AppConfig underTest;
+
+  @BeforeEach
+  void setUp() throws NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
+    message = new Message(new byte[0], new MessageProperties());
+    retrySleeper = new CancellableSleeper();
+    listenerThread = Executors.newSingleThreadExecutor();
+    underTest = new AppConfig();
+    setDeclaredField(underTest, "userServiceRetryMaxAttempts", 3);
+    setDeclaredField(underTest, "userServiceRetryMultiplier", 2.0);
+    lenient().when(invocation.getMethod()).thenReturn(Object.class.getMethod("toString"));
+    lenient().when(invocation.getArguments()).thenReturn(new Object[] { channel, message });
+    given(invocation.invocableClone()).willReturn(invocation);
+  }
+
+  @AfterEach
+  void tearDown() {
+    listenerThread.shutdownNow();
+  }
+
+  @Test
+  void shouldRequeueDeliveryWhenUserServiceRetriesAreExhausted() throws Throwable {
+    // given
+    setDeclaredField(underTest, "userServiceRetryInitialInterval", 1L);
+    setDeclaredField(underTest, "userServiceRetryMaxInterval", 2L);
+    RetryOperationsInterceptor retryAdvice = underTest.userServiceRetryAdvice(retrySleeper);
+    given(invocation.proceed()).willThrow(new UserServiceUnavailableException("User service circuit breaker is open"));
+
+    // when
+    Throwable thrown = catchThrowable(() -> retryAdvice.invoke(invocation));
+
+    // then
+    verify(invocation, times(3)).proceed();
+    assertThat(requeued(thrown, false)).isTrue();
+  }
+
+  @Test
+  void shouldStopRetryingAndRequeueDeliveryWhenBackOffIsCancelled() throws Throwable {
+    // given
+    setDeclaredField(underTest, "userServiceRetryInitialInterval", 60_000L);
+    setDeclaredField(underTest, "userServiceRetryMaxInterval", 60_000L);
+    RetryOperationsInterceptor retryAdvice = underTest.userServiceRetryAdvice(retrySleeper);
+    given(invocation.proceed()).willThrow(new UserServiceUnavailableException("User service circuit breaker is open"));
+    Future<Object> listener = listenerThread.submit(() -> {
+      try {
+        return retryAdvice.invoke(invocation);
+      } catch (Throwable e) {
+        return e;
+      }
+    });
+    verify(invocation, timeout(1000)).proceed();
+
+    // when
+    retrySleeper.cancel();
+
+    // then
+    Object thrown = listener.get(1, TimeUnit.SECONDS);
+    assertThat(thrown).isInstanceOf(Throwable.class);
+    verify(invocation, times(1)).proceed();
+    assertThat(requeued((Throwable) thrown, true)).isTrue();
+  }
+
+  private boolean requeued(Throwable thrown, boolean defaultRequeueRejected) {
+    ListenerExecutionFailedException failure = new ListenerExecutionFailedException(
+        "Listener threw exception", thrown, message);
+    return ContainerUtils.shouldRequeue(defaultRequeueRejected, failure, LogFactory.getLog(AppConfigTest.class));
+  }
+
+  private void setDeclaredField(Object target, String fieldName, Object value)
+      throws NoSuchFieldException, IllegalAccessException {
+    Field field = target.getClass().getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(target, value);
+    field.setAccessible(false);
+  }
+}
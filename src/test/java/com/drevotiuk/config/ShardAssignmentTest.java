@@ -0,0 +1,63 @@
+package com.drevotiuk.config;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardAssignmentTest {
+  @Test
+  void shouldConsumeSharedQueuesWhenShardingIsDisabled() {
+    // given
+    ShardAssignment underTest = new ShardAssignment("verification", "order", false, 4, new int[0], -1, 0);
+
+    // when
+    // then
+    assertThat(underTest.getEmailVerificationQueues()).containsExactly("verification");
+    assertThat(underTest.getOrderQueues()).containsExactly("order");
+  }
+
+  @Test
+  void shouldConsumeClaimedShardsWhenShardingIsEnabled() {
+    // given
+    ShardAssignment underTest = new ShardAssignment("verification", "order", true, 4, new int[] { 1, 3 }, -1, 0);
+
+    // when
+    // then
+    assertThat(underTest.getEmailVerificationQueues())
+        .containsExactly("verification.shard-1", "verification.shard-3");
+    assertThat(underTest.getOrderQueues()).containsExactly("order.shard-1", "order.shard-3");
+  }
+
+  @Test
+  void shouldSpreadShardsOverInstances() {
+    // given
+    ShardAssignment first = new ShardAssignment("verification", "order", true, 5, new int[0], 0, 2);
+    ShardAssignment second = new ShardAssignment("verification", "order", true, 5, new int[0], 1, 2);
+
+    // when
+    // then
+    assertThat(first.getOrderQueues()).containsExactly("order.shard-0", "order.shard-2", "order.shard-4");
+    assertThat(second.getOrderQueues()).containsExactly("order.shard-1", "order.shard-3");
+  }
+
+  @Test
+  void shouldThrowWhenShardingIsEnabledWithoutClaim() {
+    assertThatThrownBy(() -> new ShardAssignment("verification", "order", true, 4, new int[0], -1, 0))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("claimed-shards");
+  }
+
+  @Test
+  void shouldThrowWhenInstanceIndexIsOutOfRange() {
+    assertThatThrownBy(() -> new ShardAssignment("verification", "order", true, 4, new int[0], 2, 2))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("out of range");
+  }
+
+  @Test
+  void shouldThrowWhenClaimedShardIsOutOfRange() {
+    assertThatThrownBy(() -> new ShardAssignment("verification", "order", true, 2, new int[] { 2 }, -1, 0))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("out of range");
+  }
+}
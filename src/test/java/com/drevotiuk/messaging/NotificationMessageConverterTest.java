@@ -0,0 +1,170 @@
+package com.drevotiuk.messaging;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.drevotiuk.messaging.DtoBinding.FieldKind;
+import com.drevotiuk.model.EmailVerificationDetails;
+import com.drevotiuk.model.OrderEmailDetails;
+import com.drevotiuk.model.UserView;
+
+public class NotificationMessageConverterTest {
+  private NotificationMessageConverter underTest;
+
+  @BeforeEach
+  void setUp() {
+    underTest = new NotificationMessageConverter(new Jackson2JsonMessageConverter());
+  }
+
+  @Test
+  void shouldConvertJsonToInferredType() {
+    // given
+    MessageProperties properties = jsonProperties();
+    properties.setInferredArgumentType(OrderEmailDetails.class);
+    Message message = new Message(
+        "{\"userId\":\"id\",\"unknown\":{\"a\":[1,2]},\"orderTime\":\"2024-01-01\",\"totalPrice\":10.50}"
+            .getBytes(StandardCharsets.UTF_8),
+        properties);
+
+    // when
+    Object result = underTest.fromMessage(message);
+
+    // then
+    assertThat(result).isInstanceOf(OrderEmailDetails.class);
+    OrderEmailDetails details = (OrderEmailDetails) result;
+    assertThat(details.getUserId()).isEqualTo("id");
+    assertThat(details.getOrderTime()).isEqualTo("2024-01-01");
+    assertThat(details.getTotalPrice()).isEqualByComparingTo(new BigDecimal("10.50"));
+  }
+
+  @Test
+  void shouldConvertJsonProducedByJacksonUsingTypeIdHeader() {
+    // given
+    UserView user = new UserView("John", "Doe", "johndoe@mail.com", null);
+    Message message = new Jackson2JsonMessageConverter().toMessage(user, new MessageProperties());
+
+    // when
+    Object result = underTest.fromMessage(message);
+
+    // then
+    assertThat(result).isInstanceOf(UserView.class);
+    assertThat(((UserView) result).getEmail()).isEqualTo("johndoe@mail.com");
+    assertThat(((UserView) result).getDateOfBirth()).isNull();
+  }
+
+  @Test
+  void shouldRoundTripBinaryEncoding() {
+    // given
+    MessageProperties properties = new MessageProperties();
+    properties.setContentType(NotificationMessageConverter.BINARY_CONTENT_TYPE);
+    EmailVerificationDetails details = new EmailVerificationDetails("johndoe@mail.com", "John", null);
+
+    // when
+    Message message = underTest.toMessage(details, properties);
+    Object result = underTest.fromMessage(message);
+
+    // then
+    assertThat(result).isInstanceOf(EmailVerificationDetails.class);
+    assertThat(((EmailVerificationDetails) result).getEmail()).isEqualTo("johndoe@mail.com");
+    assertThat(((EmailVerificationDetails) result).getFirstName()).isEqualTo("John");
+    assertThat(((EmailVerificationDetails) result).getLink()).isNull();
+  }
+
+  @Test
+  void shouldRejectTypeOutsideAllowList() {
+    // given
+    MessageProperties properties = jsonProperties();
+    properties.setHeader("__TypeId__", "java.util.HashMap");
+    Message message = new Message("{}".getBytes(StandardCharsets.UTF_8), properties);
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.fromMessage(message))
+        .isInstanceOf(MessageConversionException.class)
+        .hasMessageContaining("Type is not allowed");
+  }
+
+  @Test
+  void shouldRejectMalformedJson() {
+    // given
+    MessageProperties properties = jsonProperties();
+    properties.setInferredArgumentType(EmailVerificationDetails.class);
+    Message message = new Message("[\"johndoe@mail.com\"]".getBytes(StandardCharsets.UTF_8), properties);
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.fromMessage(message))
+        .isInstanceOf(MessageConversionException.class)
+        .hasMessageContaining("Expected a JSON object");
+  }
+
+  @Test
+  void shouldConvertJsonNullToNull() {
+    // given
+    Message message = new Message("null".getBytes(StandardCharsets.UTF_8), jsonProperties());
+
+    // when
+    Object result = underTest.fromMessage(message);
+
+    // then
+    assertThat(result).isNull();
+  }
+
+  @Test
+  void shouldBindEveryDeclaredFieldOfAllowedTypes() {
+    for (DtoBinding<?> binding : NotificationMessageConverter.BINDINGS) {
+      // given
+      List<String> declaredNames = new ArrayList<>();
+      List<FieldKind> declaredKinds = new ArrayList<>();
+      for (Field field : binding.type().getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+          declaredNames.add(field.getName());
+          declaredKinds.add(kindOf(field.getType()));
+        }
+      }
+
+      // when
+      List<String> boundNames = new ArrayList<>();
+      List<FieldKind> boundKinds = new ArrayList<>();
+      for (int i = 0; i < binding.size(); i++) {
+        boundNames.add(binding.name(i));
+        boundKinds.add(binding.kind(i));
+      }
+
+      // then
+      assertThat(boundNames).as("bound fields of %s", binding.type().getName())
+          .containsExactlyElementsOf(declaredNames);
+      assertThat(boundKinds).as("field kinds of %s", binding.type().getName())
+          .containsExactlyElementsOf(declaredKinds);
+    }
+  }
+
+  private static FieldKind kindOf(Class<?> type) {
+    if (type == String.class) {
+      return FieldKind.STRING;
+    }
+    if (type == BigDecimal.class) {
+      return FieldKind.DECIMAL;
+    }
+    return null; // No binding kind supports this type yet
+  }
+
+  private MessageProperties jsonProperties() {
+    MessageProperties properties = new MessageProperties();
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    return properties;
+  }
+}
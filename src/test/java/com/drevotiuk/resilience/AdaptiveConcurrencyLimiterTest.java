@@ -0,0 +1,67 @@
+package com.drevotiuk.resilience;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+  private static final long THRESHOLD = 100;
+
+  @Test
+  void shouldRejectWhenLimitIsReached() {
+    // given
+    AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, THRESHOLD);
+
+    // when
+    // then
+    assertThat(underTest.tryAcquire()).isTrue();
+    assertThat(underTest.tryAcquire()).isTrue();
+    assertThat(underTest.tryAcquire()).isFalse();
+    assertThat(underTest.getInFlight()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldIncreaseLimitAfterFastCallsWhenUtilized() {
+    // given
+    AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(2, 1, 3, 0.5, THRESHOLD);
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      underTest.tryAcquire();
+      underTest.tryAcquire();
+      underTest.onSuccess(THRESHOLD);
+      underTest.onSuccess(THRESHOLD);
+    }
+
+    // then
+    assertThat(underTest.getLimit()).isEqualTo(3);
+    assertThat(underTest.getInFlight()).isZero();
+  }
+
+  @Test
+  void shouldDecreaseLimitOnSlowOrDroppedCalls() {
+    // given
+    AdaptiveConcurrencyLimiter underTest = new AdaptiveConcurrencyLimiter(8, 1, 10, 0.5, THRESHOLD);
+
+    // when
+    underTest.tryAcquire();
+    underTest.onSuccess(THRESHOLD + 1);
+    underTest.tryAcquire();
+    underTest.onDropped();
+    underTest.tryAcquire();
+    underTest.onDropped();
+    underTest.tryAcquire();
+    underTest.onDropped();
+
+    // then
+    assertThat(underTest.getLimit()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldThrowWhenLimitsAreInvalid() {
+    assertThatThrownBy(() -> new AdaptiveConcurrencyLimiter(0, 1, 10, 0.5, THRESHOLD))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new AdaptiveConcurrencyLimiter(5, 1, 10, 1.5, THRESHOLD))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,77 @@
+package com.drevotiuk.resilience;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+  private static final long OPEN_DURATION = 1000;
+
+  private AtomicLong clock;
+  private CircuitBreaker underTest;
+
+  @BeforeEach
+  void setUp() {
+    clock = new AtomicLong();
+    underTest = new CircuitBreaker(2, OPEN_DURATION, clock::get);
+  }
+
+  @Test
+  void shouldOpenAfterConsecutiveFailures() {
+    // when
+    underTest.onFailure();
+    underTest.onFailure();
+
+    // then
+    assertThat(underTest.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(underTest.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  void shouldResetFailuresOnSuccess() {
+    // when
+    underTest.onFailure();
+    underTest.onSuccess();
+    underTest.onFailure();
+
+    // then
+    assertThat(underTest.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(underTest.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  void shouldLetSingleTrialThroughAfterOpenDuration() {
+    // given
+    underTest.onFailure();
+    underTest.onFailure();
+    clock.addAndGet(OPEN_DURATION);
+
+    // when
+    // then
+    assertThat(underTest.tryAcquirePermission()).isTrue();
+    assertThat(underTest.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    assertThat(underTest.tryAcquirePermission()).isFalse();
+
+    underTest.onSuccess();
+    assertThat(underTest.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void shouldReopenWhenTrialFails() {
+    // given
+    underTest.onFailure();
+    underTest.onFailure();
+    clock.addAndGet(OPEN_DURATION);
+    underTest.tryAcquirePermission();
+
+    // when
+    underTest.onFailure();
+
+    // then
+    assertThat(underTest.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(underTest.tryAcquirePermission()).isFalse();
+  }
+}
@@ -0,0 +1,106 @@
+package com.drevotiuk.scheduling;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import com.drevotiuk.model.exception.DelayedNotificationException;
+import com.drevotiuk.resilience.CancellableSleeper;
+import com.rabbitmq.client.Channel;
+
+@ExtendWith(MockitoExtension.class)
+public class DelayedDeliveryAdviceTest {
+  private static final long REJECT_DELAY = 5000;
+
+  @Mock
+  private DelayedNotificationScheduler scheduler;
+  @Mock
+  private MethodInvocation invocation;
+  @Mock
+  private Channel channel;
+  @Mock
+  private CancellableSleeper sleeper;
+  private Message message;
+  private DelayedDeliveryAdvice underTest;
+
+  @BeforeEach
+  void setUp() {
+    message = new Message(new byte[0], new MessageProperties());
+    underTest = new DelayedDeliveryAdvice(scheduler, sleeper, REJECT_DELAY);
+  }
+
+  @Test
+  void shouldNotInvokeListenerWhenMessageIsDeferred() throws Throwable {
+    // given
+    given(invocation.getArguments()).willReturn(new Object[] { channel, message });
+    given(scheduler.defer(message)).willReturn(true);
+
+    // when
+    Object result = underTest.invoke(invocation);
+
+    // then
+    assertThat(result).isNull();
+    verify(invocation, never()).proceed();
+  }
+
+  @Test
+  void shouldInvokeListenerWhenMessageIsNotDeferred() throws Throwable {
+    // given
+    given(invocation.getArguments()).willReturn(new Object[] { channel, message });
+    given(scheduler.defer(message)).willReturn(false);
+    given(invocation.proceed()).willReturn("processed");
+
+    // when
+    Object result = underTest.invoke(invocation);
+
+    // then
+    assertThat(result).isEqualTo("processed");
+  }
+
+  @Test
+  void shouldInvokeListenerWhenArgumentIsNotMessage() throws Throwable {
+    // given
+    given(invocation.getArguments()).willReturn(new Object[] { channel, "payload" });
+
+    // when
+    underTest.invoke(invocation);
+
+    // then
+    verify(invocation).proceed();
+    verify(scheduler, never()).defer(any());
+  }
+
+  @Test
+  void shouldFailListenerAfterRejectDelaySoMessageIsRequeuedWhenStoringFails() throws Throwable {
+    // given
+    given(invocation.getArguments()).willReturn(new Object[] { channel, message });
+    given(scheduler.defer(message)).willThrow(new DelayedNotificationException("Failed to store delayed notification"));
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.invoke(invocation)).isInstanceOf(DelayedNotificationException.class);
+    verify(sleeper).sleep(REJECT_DELAY);
+    verify(invocation, never()).proceed();
+  }
+
+  @Test
+  void shouldFailListenerAtOnceWhenRejectDelayIsCancelled() throws Throwable {
+    // given
+    given(invocation.getArguments()).willReturn(new Object[] { channel, message });
+    given(scheduler.defer(message)).willThrow(new DelayedNotificationException("Failed to store delayed notification"));
+    willThrow(new InterruptedException("Retry back-off cancelled")).given(sleeper).sleep(REJECT_DELAY);
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.invoke(invocation)).isInstanceOf(DelayedNotificationException.class);
+    verify(invocation, never()).proceed();
+  }
+}
@@ -0,0 +1,225 @@
+package com.drevotiuk.scheduling;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class DelayedNotificationSchedulerTest {
+  private static final String QUEUE = "email-verification";
+
+  @TempDir
+  Path directory;
+  @Mock
+  private RabbitTemplate rabbitTemplate;
+  private SimpleMeterRegistry meterRegistry;
+  private DelayedNotificationScheduler underTest;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    lenient().doAnswer(confirm(true)).when(rabbitTemplate)
+        .send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    underTest = scheduler(Long.MAX_VALUE);
+    underTest.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  void shouldNotDeferMessageWithoutSendAt() {
+    // given
+    Message message = message(null);
+
+    // when
+    boolean deferred = underTest.defer(message);
+
+    // then
+    assertThat(deferred).isFalse();
+    assertThat(pending()).isZero();
+  }
+
+  @Test
+  void shouldNotDeferMessageThatIsAlreadyDue() {
+    // given
+    Message message = message(System.currentTimeMillis() - 1000);
+
+    // when
+    boolean deferred = underTest.defer(message);
+
+    // then
+    assertThat(deferred).isFalse();
+    assertThat(message.getMessageProperties().getHeaders()).containsKey(DelayedNotificationScheduler.SEND_AT_HEADER);
+  }
+
+  @Test
+  void shouldHoldMessageUntilSendAt() {
+    // given
+    Message message = message(System.currentTimeMillis() + 60_000);
+
+    // when
+    boolean deferred = underTest.defer(message);
+
+    // then
+    assertThat(deferred).isTrue();
+    assertThat(pending()).isEqualTo(1);
+    assertThat(meterRegistry.get("notification.delayed.scheduled").counter().count()).isEqualTo(1);
+    verify(rabbitTemplate, after(200).never()).send(anyString(), anyString(), any(Message.class),
+        any(CorrelationData.class));
+  }
+
+  @Test
+  void shouldDeliverMessageToItsQueueWithoutSendAtWhenDue() {
+    // given
+    Message message = message(System.currentTimeMillis() + 200);
+    message.getMessageProperties().setHeader("attempt", 2);
+    ArgumentCaptor<Message> delivered = ArgumentCaptor.forClass(Message.class);
+
+    // when
+    underTest.defer(message);
+
+    // then
+    verify(rabbitTemplate, timeout(2000)).send(eq(""), eq(QUEUE), delivered.capture(), any(CorrelationData.class));
+    assertThat(new String(delivered.getValue().getBody(), StandardCharsets.UTF_8)).isEqualTo("body");
+    assertThat(delivered.getValue().getMessageProperties().getHeaders())
+        .doesNotContainKey(DelayedNotificationScheduler.SEND_AT_HEADER)
+        .containsEntry("attempt", 2);
+    assertThat(meterRegistry.get("notification.delayed.delivered").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRetryDeliveryThatFailed() {
+    // given
+    willThrow(new AmqpConnectException(new IllegalStateException("Connection refused")))
+        .willThrow(new IllegalStateException("Channel closed"))
+        .willAnswer(confirm(true))
+        .given(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+    // when
+    underTest.defer(message(System.currentTimeMillis() + 200));
+
+    // then
+    verify(rabbitTemplate, timeout(3000).times(3)).send(eq(""), eq(QUEUE), any(Message.class),
+        any(CorrelationData.class));
+    assertThat(meterRegistry.get("notification.delayed.delivered").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRetryDeliveryThatIsNotConfirmed() {
+    // given
+    willAnswer(confirm(false))
+        .willAnswer(invocation -> null)
+        .willAnswer(confirm(true))
+        .given(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+    // when
+    underTest.defer(message(System.currentTimeMillis() + 200));
+
+    // then
+    verify(rabbitTemplate, timeout(3000).times(3)).send(eq(""), eq(QUEUE), any(Message.class),
+        any(CorrelationData.class));
+    assertThat(meterRegistry.get("notification.delayed.delivered").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRetryDeliveryThatIsReturnedAsUnroutable() {
+    // given
+    willAnswer(invocation -> {
+      CorrelationData correlation = invocation.getArgument(3);
+      correlation.setReturned(new ReturnedMessage(invocation.getArgument(2), 312, "NO_ROUTE", "", QUEUE));
+      return confirm(true).answer(invocation);
+    }).willAnswer(confirm(true))
+        .given(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+    // when
+    underTest.defer(message(System.currentTimeMillis() + 200));
+
+    // then
+    verify(rabbitTemplate, timeout(3000).times(2)).send(eq(""), eq(QUEUE), any(Message.class),
+        any(CorrelationData.class));
+    assertThat(meterRegistry.get("notification.delayed.delivered").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldDeliverPendingMessageAfterRestart() {
+    // given
+    underTest.defer(message(System.currentTimeMillis() + 500));
+    underTest.stop();
+
+    // when
+    underTest = scheduler(Long.MAX_VALUE);
+    underTest.start();
+
+    // then
+    verify(rabbitTemplate, timeout(2000)).send(eq(""), eq(QUEUE), any(Message.class), any(CorrelationData.class));
+  }
+
+  @Test
+  void shouldKeepDeliveringAfterCompactingStoreAtRuntime() {
+    // given
+    underTest.stop();
+    underTest = scheduler(1);
+    underTest.start();
+    underTest.defer(message(System.currentTimeMillis() + 100));
+    verify(rabbitTemplate, timeout(2000)).send(eq(""), eq(QUEUE), any(Message.class), any(CorrelationData.class));
+
+    // when
+    underTest.defer(message(System.currentTimeMillis() + 300));
+    underTest.defer(message(System.currentTimeMillis() + 400));
+
+    // then
+    verify(rabbitTemplate, timeout(2000).times(3)).send(eq(""), eq(QUEUE), any(Message.class),
+        any(CorrelationData.class));
+    assertThat(meterRegistry.get("notification.delayed.delivered").counter().count()).isEqualTo(3);
+  }
+
+  private DelayedNotificationScheduler scheduler(long compactionThreshold) {
+    return new DelayedNotificationScheduler(rabbitTemplate, meterRegistry,
+        directory.resolve("delayed.log").toString(), 10, 50, 100, compactionThreshold);
+  }
+
+  private static Answer<Void> confirm(boolean ack) {
+    return invocation -> {
+      CorrelationData correlation = invocation.getArgument(3);
+      correlation.getFuture().set(new CorrelationData.Confirm(ack, ack ? null : "Queue is full"));
+      return null;
+    };
+  }
+
+  private double pending() {
+    return meterRegistry.get("notification.delayed.pending").gauge().value();
+  }
+
+  private Message message(Long sendAt) {
+    MessageProperties properties = new MessageProperties();
+    properties.setConsumerQueue(QUEUE);
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    if (sendAt != null) {
+      properties.setHeader(DelayedNotificationScheduler.SEND_AT_HEADER, sendAt);
+    }
+    return new Message("body".getBytes(StandardCharsets.UTF_8), properties);
+  }
+}
@@ -0,0 +1,236 @@
+package com.drevotiuk.scheduling;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+
+public class DelayedNotificationStoreTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void shouldStoreAndReadNotification() throws IOException {
+    // given
+    DelayedNotificationStore underTest = new DelayedNotificationStore(directory.resolve("delayed.log"));
+    underTest.open((offset, sendAt) -> fail("Nothing to replay"));
+
+    // when
+    long offset = underTest.append(notification(1000, "{\"email\":\"johndoe@mail.com\"}")).getOffset();
+    DelayedNotification result = underTest.read(offset);
+    underTest.close();
+
+    // then
+    assertThat(result.getSendAt()).isEqualTo(1000);
+    assertThat(result.getQueue()).isEqualTo("email-verification");
+    assertThat(new String(result.getMessage().getBody(), StandardCharsets.UTF_8))
+        .isEqualTo("{\"email\":\"johndoe@mail.com\"}");
+    assertThat(result.getMessage().getMessageProperties().getContentType())
+        .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+    assertThat((String) result.getMessage().getMessageProperties().getHeader("__TypeId__"))
+        .isEqualTo("com.drevotiuk.model.EmailVerificationDetails");
+  }
+
+  @Test
+  void shouldReplayOnlyPendingNotificationsAfterReopening() throws IOException {
+    // given
+    Path path = directory.resolve("delayed.log");
+    DelayedNotificationStore store = new DelayedNotificationStore(path);
+    store.open((offset, sendAt) -> {
+    });
+    long delivered = store.append(notification(1000, "first")).getOffset();
+    store.append(notification(2000, "second"));
+    store.markDelivered(delivered);
+    store.close();
+    DelayedNotificationStore underTest = new DelayedNotificationStore(path);
+    List<long[]> replayed = new ArrayList<>();
+
+    // when
+    underTest.open((offset, sendAt) -> replayed.add(new long[] { offset, sendAt }));
+
+    // then
+    assertThat(replayed).hasSize(1);
+    assertThat(replayed.get(0)[1]).isEqualTo(2000);
+    DelayedNotification result = underTest.read(replayed.get(0)[0]);
+    assertThat(new String(result.getMessage().getBody(), StandardCharsets.UTF_8)).isEqualTo("second");
+    underTest.close();
+  }
+
+  @Test
+  void shouldDropTruncatedRecordWhenReopening() throws IOException {
+    // given
+    Path path = directory.resolve("delayed.log");
+    DelayedNotificationStore store = new DelayedNotificationStore(path);
+    store.open((offset, sendAt) -> {
+    });
+    store.append(notification(1000, "first"));
+    store.close();
+    Files.write(path, new byte[] { 1, 0, 0 }, StandardOpenOption.APPEND);
+    DelayedNotificationStore underTest = new DelayedNotificationStore(path);
+    List<Long> replayed = new ArrayList<>();
+
+    // when
+    underTest.open((offset, sendAt) -> replayed.add(sendAt));
+    underTest.close();
+
+    // then
+    assertThat(replayed).containsExactly(1000L);
+  }
+
+  @Test
+  void shouldKeepTypesOfHeaderValues() throws IOException {
+    // given
+    DelayedNotificationStore underTest = new DelayedNotificationStore(directory.resolve("delayed.log"));
+    underTest.open((offset, sendAt) -> fail("Nothing to replay"));
+    DelayedNotification notification = notification(1000, "body");
+    MessageProperties properties = notification.getMessage().getMessageProperties();
+    properties.setHeader("attempt", 3);
+    properties.setHeader("created-at", 1700000000000L);
+    properties.setHeader("reminder", true);
+    properties.setHeader("score", 0.5);
+    properties.setHeader("checksum", new byte[] { 1, 2, 3 });
+    properties.setHeader("missing", null);
+    properties.setHeader("tags", Arrays.asList("a", "b"));
+
+    // when
+    DelayedNotification result = underTest.read(underTest.append(notification).getOffset());
+    underTest.close();
+
+    // then
+    Map<String, Object> headers = result.getMessage().getMessageProperties().getHeaders();
+    assertThat(headers.get("attempt")).isEqualTo(3);
+    assertThat(headers.get("created-at")).isEqualTo(1700000000000L);
+    assertThat(headers.get("reminder")).isEqualTo(true);
+    assertThat(headers.get("score")).isEqualTo(0.5);
+    assertThat((byte[]) headers.get("checksum")).containsExactly(1, 2, 3);
+    assertThat(headers).containsEntry("missing", null);
+    assertThat(headers.get("tags")).isEqualTo("[a, b]");
+  }
+
+  @Test
+  void shouldCompactOpenStoreOnceDeliveredRecordsExceedThreshold() throws IOException {
+    // given
+    Path path = directory.resolve("delayed.log");
+    DelayedNotificationStore underTest = new DelayedNotificationStore(path, 1);
+    underTest.open((offset, sendAt) -> {
+    });
+    long first = underTest.append(notification(1000, "first")).getOffset();
+    underTest.append(notification(2000, "second"));
+    long sizeBefore = Files.size(path);
+    assertThat(underTest.needsCompaction()).isFalse();
+    underTest.markDelivered(first);
+    List<long[]> replayed = new ArrayList<>();
+    List<Long> generations = new ArrayList<>();
+
+    // when
+    boolean needsCompaction = underTest.needsCompaction();
+    underTest.compact((offset, sendAt) -> replayed.add(new long[] { offset, sendAt }), generations::add);
+
+    // then
+    assertThat(needsCompaction).isTrue();
+    assertThat(generations).containsExactly(underTest.getGeneration());
+    assertThat(underTest.needsCompaction()).isFalse();
+    assertThat(Files.size(path)).isLessThan(sizeBefore);
+    assertThat(replayed).hasSize(1);
+    assertThat(replayed.get(0)[1]).isEqualTo(2000);
+    DelayedNotification second = underTest.read(replayed.get(0)[0]);
+    assertThat(new String(second.getMessage().getBody(), StandardCharsets.UTF_8)).isEqualTo("second");
+    DelayedNotification third = underTest.read(underTest.append(notification(3000, "third")).getOffset());
+    assertThat(new String(third.getMessage().getBody(), StandardCharsets.UTF_8)).isEqualTo("third");
+    underTest.close();
+  }
+
+  @Test
+  void shouldReplayNotificationsAppendedDuringCompaction() throws IOException {
+    // given
+    DelayedNotificationStore underTest = new DelayedNotificationStore(directory.resolve("delayed.log"), 1);
+    underTest.open((offset, sendAt) -> {
+    });
+    underTest.markDelivered(underTest.append(notification(1000, "first")).getOffset());
+    underTest.append(notification(2000, "second"));
+    long generation = underTest.getGeneration();
+    List<DelayedNotificationStore.Position> appended = new ArrayList<>();
+    List<long[]> replayed = new ArrayList<>();
+
+    // when
+    underTest.compact((offset, sendAt) -> {
+      replayed.add(new long[] { offset, sendAt });
+      if (appended.isEmpty()) {
+        try {
+          appended.add(underTest.append(notification(3000, "third")));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }, newGeneration -> {
+    });
+
+    // then
+    assertThat(appended.get(0).getGeneration()).isEqualTo(generation);
+    assertThat(underTest.getGeneration()).isEqualTo(generation + 1);
+    assertThat(replayed).extracting(entry -> entry[1]).containsExactly(2000L, 3000L);
+    DelayedNotification third = underTest.read(replayed.get(1)[0]);
+    assertThat(new String(third.getMessage().getBody(), StandardCharsets.UTF_8)).isEqualTo("third");
+    underTest.close();
+  }
+
+  @Test
+  void shouldKeepMessageProperties() throws IOException {
+    // given
+    DelayedNotificationStore underTest = new DelayedNotificationStore(directory.resolve("delayed.log"));
+    underTest.open((offset, sendAt) -> fail("Nothing to replay"));
+    DelayedNotification notification = notification(1000, "body");
+    MessageProperties properties = notification.getMessage().getMessageProperties();
+    properties.setContentEncoding("UTF-8");
+    properties.setMessageId("message-1");
+    properties.setCorrelationId("correlation-1");
+    properties.setReplyTo("replies");
+    properties.setExpiration("60000");
+    properties.setType("reminder");
+    properties.setAppId("auth-service");
+    properties.setTimestamp(new Date(1700000000000L));
+    properties.setPriority(5);
+    properties.setDeliveryMode(null);
+    properties.setReceivedDeliveryMode(MessageDeliveryMode.PERSISTENT);
+
+    // when
+    DelayedNotification result = underTest.read(underTest.append(notification).getOffset());
+    underTest.close();
+
+    // then
+    MessageProperties stored = result.getMessage().getMessageProperties();
+    assertThat(stored.getContentEncoding()).isEqualTo("UTF-8");
+    assertThat(stored.getMessageId()).isEqualTo("message-1");
+    assertThat(stored.getCorrelationId()).isEqualTo("correlation-1");
+    assertThat(stored.getReplyTo()).isEqualTo("replies");
+    assertThat(stored.getExpiration()).isEqualTo("60000");
+    assertThat(stored.getType()).isEqualTo("reminder");
+    assertThat(stored.getAppId()).isEqualTo("auth-service");
+    assertThat(stored.getTimestamp()).isEqualTo(new Date(1700000000000L));
+    assertThat(stored.getPriority()).isEqualTo(5);
+    assertThat(stored.getDeliveryMode()).isEqualTo(MessageDeliveryMode.PERSISTENT);
+  }
+
+  private DelayedNotification notification(long sendAt, String body) {
+    MessageProperties properties = new MessageProperties();
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    properties.setHeader("__TypeId__", "com.drevotiuk.model.EmailVerificationDetails");
+    return new DelayedNotification(sendAt, "email-verification",
+        new Message(body.getBytes(StandardCharsets.UTF_8), properties));
+  }
+}
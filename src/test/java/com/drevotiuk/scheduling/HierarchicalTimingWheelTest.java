@@ -0,0 +1,67 @@
+package com.drevotiuk.scheduling;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HierarchicalTimingWheelTest {
+  private static final long TICK = 10;
+  private static final long START = 1_700_000_000_000L;
+
+  @Test
+  void shouldExpireTimersWhenDue() {
+    // given
+    HierarchicalTimingWheel underTest = new HierarchicalTimingWheel(TICK, START);
+    underTest.schedule(START + 25, 1);
+    underTest.schedule(START + 55, 2);
+    List<Long> expired = new ArrayList<>();
+
+    // when
+    // then
+    underTest.advance(START + 20, expired::add);
+    assertThat(expired).isEmpty();
+    underTest.advance(START + 30, expired::add);
+    assertThat(expired).containsExactly(1L);
+    underTest.advance(START + 60, expired::add);
+    assertThat(expired).containsExactly(1L, 2L);
+    assertThat(underTest.size()).isZero();
+  }
+
+  @Test
+  void shouldExpireOverdueTimersOnNextAdvance() {
+    // given
+    HierarchicalTimingWheel underTest = new HierarchicalTimingWheel(TICK, START);
+    underTest.schedule(START - 1000, 7);
+    List<Long> expired = new ArrayList<>();
+
+    // when
+    underTest.advance(START, expired::add);
+
+    // then
+    assertThat(expired).containsExactly(7L);
+  }
+
+  @Test
+  void shouldCascadeTimersFromHigherLevels() {
+    // given
+    HierarchicalTimingWheel underTest = new HierarchicalTimingWheel(TICK, START);
+    long[] delays = { 2_560, 655_360, 167_772_160, 1_000_000_000L };
+    for (int i = 0; i < delays.length; i++) {
+      underTest.schedule(START + delays[i], i);
+    }
+    List<Long> expired = new ArrayList<>();
+
+    // when
+    // then
+    for (int i = 0; i < delays.length; i++) {
+      underTest.advance(START + delays[i] - TICK, expired::add);
+      assertThat(expired).hasSize(i);
+      underTest.advance(START + delays[i] + TICK, expired::add);
+      assertThat(expired).hasSize(i + 1).endsWith((long) i);
+    }
+    assertThat(underTest.size()).isZero();
+  }
+}
@@ -0,0 +1,103 @@
+package com.drevotiuk.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import com.drevotiuk.config.EmailAssetProperties;
+import com.drevotiuk.model.exception.EmailBuildingException;
+
+public class EmailAssetCacheTest {
+  @Test
+  void shouldEncodeAssetOnceAndShareIt() throws IOException {
+    // given
+    EmailAssetProperties properties = properties("terms", asset(tempFile("Hello"), "application/pdf", false));
+
+    // when
+    EmailAssetCache underTest = new EmailAssetCache(properties, new DefaultResourceLoader());
+
+    // then
+    EmailAsset asset = underTest.getAsset("terms");
+    ByteBuffer first = asset.getEncoded();
+    ByteBuffer second = asset.getEncoded();
+    assertThat(first.isReadOnly()).isTrue();
+    assertThat(first.isDirect()).isTrue();
+    assertThat(first).isEqualTo(second);
+    assertThat(StandardCharsets.US_ASCII.decode(first).toString()).isEqualTo("SGVsbG8=");
+  }
+
+  @Test
+  void shouldCreatePreencodedBodyParts() throws IOException, MessagingException {
+    // given
+    EmailAssetProperties.Asset terms = asset(tempFile("Hello"), "application/pdf", false);
+    terms.setFileName("terms.pdf");
+    EmailAssetCache underTest = new EmailAssetCache(properties("terms", terms), new DefaultResourceLoader());
+
+    // when
+    MimeBodyPart part = underTest.getAsset("terms").toBodyPart();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    part.writeTo(out);
+
+    // then
+    assertThat(part.getDisposition()).isEqualTo(Part.ATTACHMENT);
+    assertThat(part.getFileName()).isEqualTo("terms.pdf");
+    assertThat(part.getDataHandler().getContentType()).isEqualTo("application/pdf");
+    assertThat(out.toString("US-ASCII")).endsWith("SGVsbG8=");
+  }
+
+  @Test
+  void shouldThrowWhenAssetCannotBeRead() {
+    // given
+    EmailAssetProperties properties = properties("logo", asset("file:/unexisting/logo.png", "image/png", true));
+
+    // when
+    // then
+    assertThatThrownBy(() -> new EmailAssetCache(properties, new DefaultResourceLoader()))
+        .isInstanceOf(EmailBuildingException.class)
+        .hasMessageContaining("Error while loading email asset logo");
+  }
+
+  @Test
+  void shouldThrowWhenAssetIsNotConfigured() {
+    // given
+    EmailAssetCache underTest = new EmailAssetCache(new EmailAssetProperties(), new DefaultResourceLoader());
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.getAsset("logo"))
+        .isInstanceOf(EmailBuildingException.class)
+        .hasMessageContaining("not configured: logo");
+  }
+
+  private EmailAssetProperties properties(String name, EmailAssetProperties.Asset asset) {
+    EmailAssetProperties properties = new EmailAssetProperties();
+    properties.getAssets().put(name, asset);
+    return properties;
+  }
+
+  private EmailAssetProperties.Asset asset(String path, String contentType, boolean inline) {
+    EmailAssetProperties.Asset asset = new EmailAssetProperties.Asset();
+    asset.setPath(path);
+    asset.setContentType(contentType);
+    asset.setInline(inline);
+    return asset;
+  }
+
+  private String tempFile(String content) throws IOException {
+    File file = Files.createTempFile("asset", ".bin").toFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file.toURI().toString();
+  }
+}
@@ -3,19 +3,28 @@ package com.drevotiuk.service;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.BDDMockito.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
 
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 
+import com.drevotiuk.config.EmailAssetProperties;
+import com.drevotiuk.model.exception.EmailBuildingException;
 import com.drevotiuk.model.exception.EmailSendingException;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,7 +35,8 @@ public class EmailServiceTest {
 
   @BeforeEach
   void setUp() {
-    underTest = new EmailService(mailSender);
+    EmailAssetCache assetCache = new EmailAssetCache(new EmailAssetProperties(), new DefaultResourceLoader());
+    underTest = new EmailService(mailSender, assetCache);
   }
 
   @Test
@@ -50,6 +60,75 @@ public class EmailServiceTest {
     verify(mailSender).send(mimeMessage);
   }
 
+  @Test
+  void shouldAddRequestedAssetsToEmail() throws MessagingException, IOException {
+    // given
+    underTest = new EmailService(mailSender, logoAssetCache());
+    MimeMessage mimeMessage = new MimeMessage((Session) null);
+    given(mailSender.createMimeMessage()).willReturn(mimeMessage);
+
+    // when
+    underTest.send("testmail_from@mail.com", "testmail_to@mail.com", "Test Subject", "<img src=\"cid:logo\">",
+        Collections.singletonList("logo"), Collections.emptyList());
+    mimeMessage.saveChanges();
+
+    // then
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    mimeMessage.writeTo(out);
+    assertThat(mimeMessage.getContent()).isInstanceOf(MimeMultipart.class);
+    assertThat(out.toString("US-ASCII")).contains("Content-ID: <logo>").contains("AQID");
+    verify(mailSender).send(mimeMessage);
+  }
+
+  @Test
+  void shouldNotAddAssetsThatAreNotRequested() throws MessagingException, IOException {
+    // given
+    underTest = new EmailService(mailSender, logoAssetCache());
+    MimeMessage mimeMessage = new MimeMessage((Session) null);
+    given(mailSender.createMimeMessage()).willReturn(mimeMessage);
+
+    // when
+    underTest.send("testmail_from@mail.com", "testmail_to@mail.com", "Test Subject", "Test Email Content");
+
+    // then
+    assertThat(mimeMessage.getContent()).isInstanceOf(String.class).isEqualTo("Test Email Content");
+    verify(mailSender).send(mimeMessage);
+  }
+
+  @Test
+  void shouldAttachFilesOfSingleEmail() throws MessagingException, IOException {
+    // given
+    MimeMessage mimeMessage = new MimeMessage((Session) null);
+    given(mailSender.createMimeMessage()).willReturn(mimeMessage);
+    EmailAttachment receipt = new EmailAttachment("receipt.pdf", "application/pdf", new byte[] { 1, 2, 3 });
+
+    // when
+    underTest.send("testmail_from@mail.com", "testmail_to@mail.com", "Test Subject", "Test Email Content",
+        Collections.emptyList(), Collections.singletonList(receipt));
+    mimeMessage.saveChanges();
+
+    // then
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    mimeMessage.writeTo(out);
+    assertThat(mimeMessage.getContent()).isInstanceOf(MimeMultipart.class);
+    assertThat(out.toString("US-ASCII"))
+        .contains("Content-Disposition: attachment; filename=receipt.pdf")
+        .contains("AQID");
+    verify(mailSender).send(mimeMessage);
+  }
+
+  @Test
+  void shouldThrowWhenRequestedAssetIsNotConfigured() {
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.send("testmail_from@mail.com", "testmail_to@mail.com", "Test Subject",
+        "Test Email Content", Collections.singletonList("logo"), Collections.emptyList()))
+        .isInstanceOf(EmailBuildingException.class)
+        .hasMessageContaining("logo");
+
+    verify(mailSender, never()).createMimeMessage();
+  }
+
   @Test
   void shouldThrowWhenEmailDetailsAreInvalid() throws MessagingException, IOException {
     // given
@@ -68,4 +147,30 @@ public class EmailServiceTest {
 
     verify(mailSender, never()).send(mimeMessage);
   }
+
+  @Test
+  void shouldThrowToCallerWhenSmtpSendFails() {
+    // given
+    MimeMessage mimeMessage = new MimeMessage((Session) null);
+    given(mailSender.createMimeMessage()).willReturn(mimeMessage);
+    willThrow(new MailSendException("Connection refused")).given(mailSender).send(mimeMessage);
+
+    // when
+    // then
+    assertThatThrownBy(
+        () -> underTest.send("testmail_from@mail.com", "testmail_to@mail.com", "Test Subject", "Test Email Content"))
+        .isInstanceOf(EmailSendingException.class)
+        .hasCauseInstanceOf(MailSendException.class);
+  }
+
+  private EmailAssetCache logoAssetCache() throws IOException {
+    File logo = Files.createTempFile("logo", ".png").toFile();
+    Files.write(logo.toPath(), new byte[] { 1, 2, 3 });
+    EmailAssetProperties.Asset asset = new EmailAssetProperties.Asset();
+    asset.setPath(logo.toURI().toString());
+    asset.setContentType("image/png");
+    EmailAssetProperties properties = new EmailAssetProperties();
+    properties.getAssets().put("logo", asset);
+    return new EmailAssetCache(properties, new DefaultResourceLoader());
+  }
 }
@@ -0,0 +1,170 @@
+package com.drevotiuk.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import com.drevotiuk.resilience.CancellableSleeper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class GracefulShutdownCoordinatorTest {
+  private static final long SHUTDOWN_TIMEOUT = 100;
+
+  @Mock
+  private RabbitListenerEndpointRegistry listenerRegistry;
+  @Mock
+  private MessageListenerContainer verificationContainer;
+  @Mock
+  private MessageListenerContainer orderContainer;
+  @Mock
+  private MethodInvocation invocation;
+  private InFlightListenerAdvice inFlightAdvice;
+  private CancellableSleeper retrySleeper;
+  private SimpleMeterRegistry meterRegistry;
+  private ExecutorService listenerThread;
+  private CountDownLatch release;
+  private GracefulShutdownCoordinator underTest;
+
+  @BeforeEach
+  void setUp() {
+    inFlightAdvice = new InFlightListenerAdvice();
+    retrySleeper = new CancellableSleeper();
+    meterRegistry = new SimpleMeterRegistry();
+    listenerThread = Executors.newSingleThreadExecutor();
+    release = new CountDownLatch(1);
+    underTest = new GracefulShutdownCoordinator(listenerRegistry, inFlightAdvice, retrySleeper, meterRegistry,
+        SHUTDOWN_TIMEOUT);
+    underTest.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    listenerThread.shutdown();
+  }
+
+  @Test
+  void shouldStopListenersWithoutCountingCompletedNotifications() throws Throwable {
+    // given
+    given(listenerRegistry.getListenerContainers()).willReturn(Collections.singletonList(verificationContainer));
+    inFlightAdvice.invoke(invocation);
+
+    // when
+    underTest.stop();
+
+    // then
+    verify(verificationContainer).stop();
+    assertThat(underTest.isRunning()).isFalse();
+    assertThat(meterRegistry.get("notification.shutdown.unfinished").counter().count()).isZero();
+    assertThat(meterRegistry.get("notification.shutdown.drain").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldStopAllContainersConcurrently() throws InterruptedException {
+    // given
+    CountDownLatch bothStopping = new CountDownLatch(2);
+    Queue<Boolean> sawOtherStopping = new ConcurrentLinkedQueue<>();
+    Answer<Void> stop = call -> {
+      bothStopping.countDown();
+      sawOtherStopping.add(bothStopping.await(500, TimeUnit.MILLISECONDS));
+      return null;
+    };
+    willAnswer(stop).given(verificationContainer).stop();
+    willAnswer(stop).given(orderContainer).stop();
+    given(listenerRegistry.getListenerContainers()).willReturn(Arrays.asList(verificationContainer, orderContainer));
+
+    // when
+    underTest.stop();
+
+    // then
+    assertThat(sawOtherStopping).containsExactly(true, true);
+  }
+
+  @Test
+  void shouldNotWaitLongerThanShutdownTimeoutForContainers() {
+    // given
+    willAnswer(call -> {
+      release.await();
+      return null;
+    }).given(verificationContainer).stop();
+    willAnswer(call -> {
+      release.await();
+      return null;
+    }).given(orderContainer).stop();
+    given(listenerRegistry.getListenerContainers()).willReturn(Arrays.asList(verificationContainer, orderContainer));
+    long startedAt = System.nanoTime();
+
+    // when
+    underTest.stop();
+
+    // then
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isLessThan(2 * SHUTDOWN_TIMEOUT + 1000);
+    assertThat(underTest.isRunning()).isFalse();
+  }
+
+  @Test
+  void shouldWakeUpListenersWaitingInRetryBackOff() throws Exception {
+    // given
+    given(listenerRegistry.getListenerContainers()).willReturn(Collections.emptyList());
+    Future<?> backOff = listenerThread.submit(() -> {
+      retrySleeper.sleep(60_000);
+      return null;
+    });
+
+    // when
+    underTest.stop();
+
+    // then
+    assertThatThrownBy(() -> backOff.get(1, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(InterruptedException.class);
+  }
+
+  @Test
+  void shouldCountNotificationsStillRunningAfterListenersStopped() throws Throwable {
+    // given
+    given(listenerRegistry.getListenerContainers()).willReturn(Collections.singletonList(verificationContainer));
+    CountDownLatch started = new CountDownLatch(1);
+    given(invocation.proceed()).willAnswer(call -> {
+      started.countDown();
+      release.await();
+      return null;
+    });
+    listenerThread.execute(() -> {
+      try {
+        inFlightAdvice.invoke(invocation);
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    started.await();
+
+    // when
+    underTest.stop();
+
+    // then
+    assertThat(meterRegistry.get("notification.shutdown.unfinished").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("notification.listener.in-flight").gauge().value()).isEqualTo(1);
+  }
+}
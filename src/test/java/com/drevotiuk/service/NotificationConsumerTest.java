@@ -7,23 +7,37 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.LocalDate;
+import java.util.Collections;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.ConditionalRejectingErrorHandler;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
+import com.drevotiuk.messaging.NotificationMessageConverter;
 import com.drevotiuk.model.EmailVerificationDetails;
 import com.drevotiuk.model.OrderEmailDetails;
 import com.drevotiuk.model.UserView;
 import com.drevotiuk.model.exception.EmailBuildingException;
+import com.drevotiuk.model.exception.EmailSendingException;
 import com.drevotiuk.model.exception.UserNotFoundException;
+import com.drevotiuk.resilience.AdaptiveConcurrencyLimiter;
+import com.drevotiuk.resilience.CircuitBreaker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 public class NotificationConsumerTest {
@@ -32,14 +46,24 @@ public class NotificationConsumerTest {
   @Mock
   private RabbitTemplate rabbitTemplate;
   @Mock
+  private MessageConverter messageConverter;
+  @Mock
   private ResourceLoader resourceLoader;
   @Mock
   private Resource resource;
+  private CircuitBreaker circuitBreaker;
   private NotificationConsumer underTest;
 
   @BeforeEach
-  void setUp() {
-    underTest = new NotificationConsumer(emailService, rabbitTemplate, resourceLoader);
+  void setUp() throws IllegalAccessException, NoSuchFieldException {
+    circuitBreaker = new CircuitBreaker(1, Long.MAX_VALUE);
+    UserLookupGuard userLookupGuard = new UserLookupGuard(
+        new AdaptiveConcurrencyLimiter(10, 1, 10, 0.9, Long.MAX_VALUE),
+        circuitBreaker,
+        new SimpleMeterRegistry());
+    underTest = new NotificationConsumer(emailService, rabbitTemplate, resourceLoader, userLookupGuard);
+    setDeclaredField(underTest, "verificationEmailAssets", new String[] { "logo" });
+    setDeclaredField(underTest, "orderCreatedEmailAssets", new String[] { "logo" });
   }
 
   @Test
@@ -61,7 +85,36 @@ public class NotificationConsumerTest {
         eq("mycompany@mail.com"),
         eq("johndoe@mail.com"),
         eq("TEST TOPIC"),
-        anyString());
+        anyString(),
+        eq(Collections.singletonList("logo")),
+        eq(Collections.emptyList()));
+  }
+
+  @Test
+  void shouldFailListenerSoMessageIsRequeuedWhenSendingFails()
+      throws IOException, IllegalAccessException, NoSuchFieldException {
+    // given
+    setDeclaredField(underTest, "from", "mycompany@mail.com");
+    setDeclaredField(underTest, "verificationEmailTopic", "TEST TOPIC");
+    EmailVerificationDetails details = new EmailVerificationDetails("johndoe@mail.com", "John",
+        "http://test-link.org");
+    given(resourceLoader.getResource(anyString())).willReturn(resource);
+    File mockFile = Files.createTempFile("test-email", ".html").toFile();
+    given(resource.getFile()).willReturn(mockFile);
+    willThrow(new EmailSendingException("Failed to send email"))
+        .given(emailService)
+        .send(anyString(), anyString(), anyString(), anyString(), anyList(), anyList());
+
+    // when
+    Throwable thrown = catchThrowable(() -> underTest.consumeEmailVerification(details));
+
+    // then
+    assertThat(thrown).isInstanceOf(EmailSendingException.class);
+    ListenerExecutionFailedException failure = new ListenerExecutionFailedException(
+        "Listener threw exception", thrown, new Message(new byte[0], new MessageProperties()));
+    // The default error handler rejects only fatal errors without requeueing
+    assertThatCode(() -> new ConditionalRejectingErrorHandler().handleError(failure))
+        .doesNotThrowAnyException();
   }
 
   @Test
@@ -81,7 +134,7 @@ public class NotificationConsumerTest {
         .isInstanceOf(EmailBuildingException.class)
         .hasMessageContaining("Error while building email");
 
-    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString());
+    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString(), anyList(), anyList());
   }
 
   @Test
@@ -91,8 +144,7 @@ public class NotificationConsumerTest {
     setDeclaredField(underTest, "orderCreatedTopic", "TEST TOPIC");
     setDeclaredField(underTest, "tokenExpiration", "999");
     OrderEmailDetails details = new OrderEmailDetails("id", LocalDate.now().toString(), BigDecimal.TEN);
-    given(rabbitTemplate.convertSendAndReceive(any(), any(), eq("id")))
-        .willReturn(new UserView("John", "Doe", "johndoe@mail.com", LocalDate.now().toString()));
+    givenUserServiceReplies(new UserView("John", "Doe", "johndoe@mail.com", LocalDate.now().toString()));
     given(resourceLoader.getResource(anyString())).willReturn(resource);
     File mockFile = Files.createTempFile("test-email", ".html").toFile();
     given(resource.getFile()).willReturn(mockFile);
@@ -105,14 +157,19 @@ public class NotificationConsumerTest {
         eq("mycompany@mail.com"),
         eq("johndoe@mail.com"),
         eq("TEST TOPIC"),
-        anyString());
+        anyString(),
+        eq(Collections.singletonList("logo")),
+        eq(Collections.emptyList()));
   }
 
   @Test
   void shouldThrowWhenUserIsNullInOrderCreatedConsumer() {
     // given
     OrderEmailDetails details = new OrderEmailDetails("id", LocalDate.now().toString(), BigDecimal.TEN);
-    given(rabbitTemplate.convertSendAndReceive(any(), any(), eq("id"))).willReturn(null);
+    Message request = new Message(new byte[0], new MessageProperties());
+    given(rabbitTemplate.getMessageConverter()).willReturn(messageConverter);
+    given(messageConverter.toMessage(eq("id"), any(MessageProperties.class))).willReturn(request);
+    given(rabbitTemplate.sendAndReceive(any(), any(), eq(request))).willReturn(null);
 
     // when
     // then
@@ -120,7 +177,7 @@ public class NotificationConsumerTest {
         .isInstanceOf(UserNotFoundException.class)
         .hasMessageContaining("User not found");
 
-    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString());
+    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString(), anyList(), anyList());
   }
 
   @Test
@@ -128,7 +185,7 @@ public class NotificationConsumerTest {
     // given
     OrderEmailDetails details = new OrderEmailDetails("id", LocalDate.now().toString(), BigDecimal.TEN);
     // Returning wrong type to trigger exception throwing
-    given(rabbitTemplate.convertSendAndReceive(any(), any(), eq("id"))).willReturn(BigDecimal.TEN);
+    givenUserServiceReplies(BigDecimal.TEN);
 
     // when
     // then
@@ -136,7 +193,26 @@ public class NotificationConsumerTest {
         .isInstanceOf(UserNotFoundException.class)
         .hasMessageContaining("User not found");
 
-    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString());
+    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString(), anyList(), anyList());
+  }
+
+  @Test
+  void shouldThrowWithoutFailingUserServiceWhenReplyIsJsonNull() {
+    // given
+    OrderEmailDetails details = new OrderEmailDetails("id", LocalDate.now().toString(), BigDecimal.TEN);
+    NotificationMessageConverter converter = new NotificationMessageConverter(new Jackson2JsonMessageConverter());
+    MessageProperties replyProperties = new MessageProperties();
+    replyProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    given(rabbitTemplate.getMessageConverter()).willReturn(converter);
+    given(rabbitTemplate.sendAndReceive(any(), any(), any(Message.class)))
+        .willReturn(new Message("null".getBytes(StandardCharsets.UTF_8), replyProperties));
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.consumeOrderCreated(details))
+        .isInstanceOf(UserNotFoundException.class)
+        .hasMessageContaining("User not found");
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
   }
 
   @Test
@@ -147,8 +223,7 @@ public class NotificationConsumerTest {
     setDeclaredField(underTest, "orderCreatedTopic", "TEST TOPIC");
     setDeclaredField(underTest, "tokenExpiration", "999");
     OrderEmailDetails details = new OrderEmailDetails("id", LocalDate.now().toString(), BigDecimal.TEN);
-    given(rabbitTemplate.convertSendAndReceive(any(), any(), eq("id")))
-        .willReturn(new UserView("John", "Doe", "johndoe@mail.com", LocalDate.now().toString()));
+    givenUserServiceReplies(new UserView("John", "Doe", "johndoe@mail.com", LocalDate.now().toString()));
     given(resourceLoader.getResource(anyString())).willReturn(resource);
     given(resource.getFile()).willReturn(new File("/unexisting/path"));
 
@@ -158,7 +233,16 @@ public class NotificationConsumerTest {
         .isInstanceOf(EmailBuildingException.class)
         .hasMessageContaining("Error while building email");
 
-    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString());
+    verify(emailService, never()).send(anyString(), anyString(), anyString(), anyString(), anyList(), anyList());
+  }
+
+  private void givenUserServiceReplies(Object user) {
+    Message request = new Message(new byte[0], new MessageProperties());
+    Message reply = new Message(new byte[0], new MessageProperties());
+    given(rabbitTemplate.getMessageConverter()).willReturn(messageConverter);
+    given(messageConverter.toMessage(eq("id"), any(MessageProperties.class))).willReturn(request);
+    given(rabbitTemplate.sendAndReceive(any(), any(), eq(request))).willReturn(reply);
+    given(messageConverter.fromMessage(reply)).willReturn(user);
   }
 
   private void setDeclaredField(Object target, String fieldName, Object value)
@@ -0,0 +1,64 @@
+package com.drevotiuk.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class UnroutedNotificationForwarderTest {
+  @Mock
+  private RabbitTemplate rabbitTemplate;
+  private SimpleMeterRegistry meterRegistry;
+  private UnroutedNotificationForwarder underTest;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    underTest = new UnroutedNotificationForwarder(rabbitTemplate,
+        Collections.singletonMap("order.unrouted", "order.shard-0"), "shard-key", meterRegistry);
+  }
+
+  @Test
+  void shouldForwardUnroutedNotificationToFirstShard() {
+    // given
+    Message message = message("order.unrouted");
+
+    // when
+    underTest.onMessage(message);
+
+    // then
+    verify(rabbitTemplate).send("", "order.shard-0", message);
+    assertThat(meterRegistry.get("notification.sharding.unrouted").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldFailWhenQueueHasNoFallbackShard() {
+    // given
+    Message message = message("verification.unrouted");
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.onMessage(message))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("verification.unrouted");
+    verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class));
+  }
+
+  private Message message(String consumerQueue) {
+    MessageProperties properties = new MessageProperties();
+    properties.setConsumerQueue(consumerQueue);
+    return new Message(new byte[0], properties);
+  }
+}
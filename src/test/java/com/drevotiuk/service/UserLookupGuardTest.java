@@ -0,0 +1,118 @@
+package com.drevotiuk.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import com.drevotiuk.model.exception.UserServiceUnavailableException;
+import com.drevotiuk.resilience.AdaptiveConcurrencyLimiter;
+import com.drevotiuk.resilience.CircuitBreaker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class UserLookupGuardTest {
+  private AdaptiveConcurrencyLimiter limiter;
+  private CircuitBreaker circuitBreaker;
+  private SimpleMeterRegistry meterRegistry;
+  private UserLookupGuard underTest;
+
+  @BeforeEach
+  void setUp() {
+    limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, Long.MAX_VALUE);
+    circuitBreaker = new CircuitBreaker(2, Long.MAX_VALUE);
+    meterRegistry = new SimpleMeterRegistry();
+    underTest = new UserLookupGuard(limiter, circuitBreaker, meterRegistry);
+  }
+
+  @Test
+  void shouldReturnLookupResultAndRecordRtt() {
+    // when
+    String result = underTest.call(() -> "user");
+
+    // then
+    assertThat(result).isEqualTo("user");
+    assertThat(limiter.getInFlight()).isZero();
+    assertThat(meterRegistry.get("notification.user-service.rtt").timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("notification.user-service.limit").gauge().value()).isEqualTo(3);
+  }
+
+  @Test
+  void shouldTreatMissingReplyAsDroppedCall() {
+    // when
+    Object result = underTest.call(() -> null);
+
+    // then
+    assertThat(result).isNull();
+    assertThat(limiter.getInFlight()).isZero();
+    assertThat(limiter.getLimit()).isEqualTo(1);
+    assertThat(meterRegistry.get("notification.user-service.rtt").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRejectWhenConcurrencyLimitIsReached() {
+    // given
+    limiter.tryAcquire();
+    limiter.tryAcquire();
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.call(() -> "user"))
+        .isInstanceOf(UserServiceUnavailableException.class)
+        .hasMessageContaining("concurrency limit");
+    assertThat(meterRegistry.get("notification.user-service.rejections").tag("reason", "limit").counter().count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void shouldRejectWithoutCallingLookupWhenCircuitIsOpen() {
+    // given
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+
+    // when
+    // then
+    assertThatThrownBy(() -> underTest.call(() -> fail("Lookup must not be called")))
+        .isInstanceOf(UserServiceUnavailableException.class)
+        .hasMessageContaining("circuit breaker is open");
+    assertThat(meterRegistry.get("notification.user-service.rejections").tag("reason", "circuit-open").counter()
+        .count()).isEqualTo(1);
+    assertThat(meterRegistry.get("notification.user-service.circuit-open").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldOpenCircuitAfterFailedLookups() {
+    // given
+    IllegalStateException failure = new IllegalStateException("Connection lost");
+
+    // when
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(() -> underTest.call(() -> {
+        throw failure;
+      })).isSameAs(failure);
+    }
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(limiter.getInFlight()).isZero();
+  }
+
+  @Test
+  void shouldNotCountConversionErrorsAsFailures() {
+    // given
+    MessageConversionException malformed = new MessageConversionException("Expected a JSON object");
+
+    // when
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(() -> underTest.call(() -> {
+        throw malformed;
+      })).isSameAs(malformed);
+    }
+
+    // then
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(limiter.getInFlight()).isZero();
+    assertThat(limiter.getLimit()).isGreaterThanOrEqualTo(2);
+  }
+}
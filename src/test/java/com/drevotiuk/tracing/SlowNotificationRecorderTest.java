@@ -0,0 +1,94 @@
+package com.drevotiuk.tracing;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SlowNotificationRecorderTest {
+  private static final int WINDOW_SIZE = 10;
+
+  @Test
+  void shouldKeepNothingUntilMinimumSampleIsCollected() throws InterruptedException {
+    // given
+    SlowNotificationRecorder underTest = new SlowNotificationRecorder(10, 100, 100);
+
+    // when
+    for (int i = 0; i < 9; i++) {
+      complete(underTest, "fast", 0);
+    }
+
+    // then
+    assertThat(underTest.getSlowNotifications()).isEmpty();
+    assertThat(underTest.getThresholdNanos()).isZero();
+  }
+
+  @Test
+  void shouldKeepSlowNotificationsBeforeWindowIsFilled() throws InterruptedException {
+    // given
+    SlowNotificationRecorder underTest = new SlowNotificationRecorder(10, 100, 100);
+    for (int i = 0; i < 10; i++) {
+      complete(underTest, "warm-up", 0);
+    }
+
+    // when
+    complete(underTest, "slow", 20);
+
+    // then
+    assertThat(underTest.getThresholdNanos()).isPositive();
+    assertThat(underTest.getSlowNotifications()).extracting(TraceRecord::getName).containsExactly("slow");
+  }
+
+  @Test
+  void shouldKeepOnlySlowestNotifications() throws InterruptedException {
+    // given
+    SlowNotificationRecorder underTest = new SlowNotificationRecorder(10, WINDOW_SIZE, 100);
+    fillWindow(underTest);
+
+    // when
+    complete(underTest, "slow", 20);
+    complete(underTest, "fast", 0);
+
+    // then
+    List<TraceRecord> records = underTest.getSlowNotifications();
+    assertThat(records).hasSize(1);
+    assertThat(records.get(0).getName()).isEqualTo("slow");
+    assertThat(records.get(0).getDurationMillis()).isGreaterThanOrEqualTo(20);
+    assertThat(records.get(0).getSpans()).extracting(TraceRecord.SpanRecord::getName).containsExactly("smtp.send");
+  }
+
+  @Test
+  void shouldOverwriteOldestRecordsWhenFull() throws InterruptedException {
+    // given
+    SlowNotificationRecorder underTest = new SlowNotificationRecorder(100, WINDOW_SIZE, 2);
+    fillWindow(underTest);
+
+    // when
+    complete(underTest, "first", 5);
+    complete(underTest, "second", 5);
+    complete(underTest, "third", 5);
+
+    // then
+    assertThat(underTest.getSlowNotifications()).extracting(TraceRecord::getName)
+        .containsExactlyInAnyOrder("second", "third");
+  }
+
+  private void fillWindow(SlowNotificationRecorder recorder) throws InterruptedException {
+    for (int i = 0; i < WINDOW_SIZE; i++) {
+      complete(recorder, "warm-up", 0);
+    }
+  }
+
+  private void complete(SlowNotificationRecorder recorder, String name, long sleepMillis)
+      throws InterruptedException {
+    NotificationTrace trace = new NotificationTrace(name, TraceContext.newRoot(), recorder::record);
+    NotificationTrace previous = trace.attach();
+    try (NotificationTrace.Span span = NotificationTrace.span("smtp.send")) {
+      Thread.sleep(sleepMillis);
+    } finally {
+      NotificationTrace.restore(previous);
+      trace.complete();
+    }
+  }
+}
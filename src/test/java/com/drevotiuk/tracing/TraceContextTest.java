@@ -0,0 +1,36 @@
+package com.drevotiuk.tracing;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class TraceContextTest {
+  @Test
+  void shouldContinueTraceFromTraceparent() {
+    // given
+    String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    // when
+    TraceContext context = TraceContext.parse(traceparent).child();
+
+    // then
+    assertThat(context.getTraceId()).isEqualTo("4bf92f3577b34da6a3ce929d0e0e4736");
+    assertThat(context.getSpanId()).hasSize(16).isNotEqualTo("00f067aa0ba902b7");
+  }
+
+  @Test
+  void shouldRejectInvalidTraceparent() {
+    assertThat(TraceContext.parse(null)).isNull();
+    assertThat(TraceContext.parse("invalid")).isNull();
+    assertThat(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01")).isNull();
+  }
+
+  @Test
+  void shouldStartNewSampledTrace() {
+    // when
+    TraceContext context = TraceContext.newRoot();
+
+    // then
+    assertThat(context.toTraceparent()).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01");
+  }
+}
@@ -0,0 +1,50 @@
+package com.drevotiuk.tracing;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+@ExtendWith(MockitoExtension.class)
+public class TracingListenerAdviceTest {
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  @Mock
+  private MethodInvocation invocation;
+
+  @Test
+  void shouldTraceListenerWithIncomingTraceContext() throws Throwable {
+    // given
+    MessageProperties properties = new MessageProperties();
+    properties.setConsumerQueue("email-verification");
+    properties.setHeader(TraceContext.TRACEPARENT_HEADER, "00-" + TRACE_ID + "-00f067aa0ba902b7-01");
+    given(invocation.getArguments()).willReturn(new Object[] { null, new Message(new byte[0], properties) });
+    AtomicReference<NotificationTrace> trace = new AtomicReference<>();
+    AtomicReference<String> mdcTraceId = new AtomicReference<>();
+    given(invocation.proceed()).willAnswer(call -> {
+      trace.set(NotificationTrace.current());
+      mdcTraceId.set(MDC.get(TracingListenerAdvice.TRACE_ID_MDC_KEY));
+      return null;
+    });
+    TracingListenerAdvice underTest = new TracingListenerAdvice(new SlowNotificationRecorder(100, 10, 10));
+
+    // when
+    underTest.invoke(invocation);
+
+    // then
+    assertThat(trace.get().getContext().getTraceId()).isEqualTo(TRACE_ID);
+    assertThat(trace.get().getDurationNanos()).isPositive();
+    assertThat(mdcTraceId.get()).isEqualTo(TRACE_ID);
+    assertThat(NotificationTrace.current()).isNull();
+    assertThat(MDC.get(TracingListenerAdvice.TRACE_ID_MDC_KEY)).isNull();
+  }
+}